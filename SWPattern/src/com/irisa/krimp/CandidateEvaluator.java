@@ -0,0 +1,235 @@
+package com.irisa.krimp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.irisa.krimp.IncrementalCodeTable.Change;
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Evaluation of a stream of candidates against an incremental code table, until one of them decreases L(D, CT).
+ * The candidates that are not itemsets of at least two items absent from the code table are skipped.
+ *
+ * In parallel, the next candidates of a window are evaluated at once on the common ForkJoinPool against the current code table, and decided in candidate order.
+ * The evaluations following the first accepted candidate are discarded once all of them have finished, their candidates are evaluated again against the code table after the change.
+ * The candidates accepted are thus the same as in sequence.
+ *
+ * The evaluation pauses before deciding a candidate once a number of decided candidates is reached, or once a time is reached and a candidate has been decided by the call, and goes on from the same candidate on the next call.
+ * The cursor gives the number of candidates of the stream passed, to resume the mining from a checkpoint.
+ * @author pmaillot
+ *
+ */
+class CandidateEvaluator {
+
+	private IncrementalCodeTable _codeTable;
+	private Iterator<KItemset> _candidates;
+	private ArrayDeque<KItemset> _pending = new ArrayDeque<KItemset>(); // Candidates taken from the stream whose evaluation was discarded, in candidate order
+	private ArrayDeque<Long> _pendingIndices = new ArrayDeque<Long>(); // Their indices in the stream
+	private long _consumed = 0; // Number of candidates taken from the stream
+	private long _lastIndex = -1; // Index in the stream of the last candidate returned by nextCandidate()
+	private long _cursor = 0; // Number of candidates of the stream passed: decided, or skipped before the last decided one
+	private boolean _parallel;
+	private int _window;
+
+	private long _pauseTime = Long.MAX_VALUE; // System.nanoTime() from which the evaluation pauses
+	private long _maxDecided = Long.MAX_VALUE;
+	private boolean _paused = false;
+	private boolean _progressed = false; // At least one candidate decided by the current call to nextAccepted()
+
+	private long _nbDecided = 0;
+	private int _nbDiscarded = 0;
+
+	/**
+	 * @param codeTable
+	 * @param parallel
+	 * @param window Number of candidates evaluated at once in parallel
+	 */
+	CandidateEvaluator(IncrementalCodeTable codeTable, boolean parallel, int window) {
+		this._codeTable = codeTable;
+		this._parallel = parallel && window > 1;
+		this._window = Math.max(1, window);
+	}
+
+	/**
+	 * Replace the candidates, the counts of decided and discarded candidates go on
+	 * @param candidates Candidates in the order they must be tested, with their support, computed if 0
+	 */
+	void setCandidates(Iterator<KItemset> candidates) {
+		this._candidates = candidates;
+		this._pending.clear();
+		this._pendingIndices.clear();
+		this._consumed = 0;
+		this._lastIndex = -1;
+		this._cursor = 0;
+	}
+
+	/**
+	 * Pass candidates of the stream without evaluating them
+	 * @param count Number of candidates to pass, as given by a previous getCursor()
+	 */
+	void skip(long count) {
+		while(this._consumed < count && this._candidates.hasNext()) {
+			this._candidates.next();
+			this._consumed++;
+		}
+		this._cursor = this._consumed;
+	}
+
+	/**
+	 * @param pauseTime System.nanoTime() from which nextAccepted() pauses, Long.MAX_VALUE for none
+	 */
+	void setPauseTime(long pauseTime) {
+		this._pauseTime = pauseTime;
+	}
+
+	/**
+	 * @param maxDecided Number of decided candidates from which nextAccepted() pauses, Long.MAX_VALUE for none
+	 */
+	void setMaxDecided(long maxDecided) {
+		this._maxDecided = maxDecided;
+	}
+
+	/**
+	 * @return true if the last call to nextAccepted() returned because of a pause, there may be more candidates
+	 */
+	boolean isPaused() {
+		return this._paused;
+	}
+
+	/**
+	 * @return Number of candidates of the stream that do not need to be evaluated again against the current code table
+	 */
+	long getCursor() {
+		return this._cursor;
+	}
+
+	/**
+	 * @return Number of candidates accepted or rejected
+	 */
+	long getDecidedCount() {
+		return this._nbDecided;
+	}
+
+	/**
+	 * @return Number of evaluations discarded after the acceptance of a previous candidate or a pause
+	 */
+	int getDiscardedCount() {
+		return this._nbDiscarded;
+	}
+
+	/**
+	 * The code table must not be modified by another thread during the evaluations
+	 * @return The change adding the next candidate that decreases L(D, CT), not committed yet, null if no candidate does or if paused
+	 */
+	Change nextAccepted() {
+		this._paused = false;
+		this._progressed = false;
+		if(! this._parallel) {
+			KItemset candidate = nextCandidate();
+			while(candidate != null) {
+				if(pausing()) {
+					pushBack(candidate, this._lastIndex);
+					return null;
+				}
+				Change change = evaluate(candidate);
+				decided(this._lastIndex);
+				if(change.getTotalLength() < this._codeTable.getTotalLength()) {
+					return change;
+				}
+				candidate = nextCandidate();
+			}
+			return null;
+		}
+
+		ArrayList<KItemset> window = new ArrayList<KItemset>(this._window);
+		ArrayList<Long> indices = new ArrayList<Long>(this._window);
+		ArrayList<ForkJoinTask<Change>> evaluations = new ArrayList<ForkJoinTask<Change>>(this._window);
+		while(true) {
+			window.clear();
+			indices.clear();
+			evaluations.clear();
+			while(window.size() < this._window) {
+				KItemset candidate = nextCandidate();
+				if(candidate == null) {
+					break;
+				}
+				window.add(candidate);
+				indices.add(this._lastIndex);
+				evaluations.add(ForkJoinPool.commonPool().submit(() -> evaluate(candidate)));
+			}
+			if(window.isEmpty()) {
+				return null;
+			}
+
+			for(int i = 0; i < window.size(); i++) {
+				Change change = null;
+				if(! pausing()) {
+					change = evaluations.get(i).join();
+					decided(indices.get(i));
+				}
+				if(change == null || change.getTotalLength() < this._codeTable.getTotalLength()) {
+					// The following evaluations still read the code table, they must be over before it changes
+					int firstDiscarded = (change == null) ? i : i + 1;
+					for(int j = window.size() - 1; j >= firstDiscarded; j--) {
+						evaluations.get(j).quietlyJoin();
+						pushBack(window.get(j), indices.get(j));
+						this._nbDiscarded++;
+					}
+					return change;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the evaluation must pause before deciding the next candidate, setting isPaused()
+	 */
+	private boolean pausing() {
+		this._paused = (this._nbDecided >= this._maxDecided || (this._progressed && System.nanoTime() >= this._pauseTime));
+		return this._paused;
+	}
+
+	private void decided(long index) {
+		this._nbDecided++;
+		this._progressed = true;
+		this._cursor = index + 1;
+	}
+
+	/**
+	 * @param candidate Candidate taken from the stream, to be returned again by nextCandidate()
+	 * @param index Its index in the stream
+	 */
+	private void pushBack(KItemset candidate, long index) {
+		this._pending.addFirst(candidate);
+		this._pendingIndices.addFirst(index);
+	}
+
+	/**
+	 * @return Next candidate of at least two items that is not in the code table, null if none
+	 */
+	private KItemset nextCandidate() {
+		while(! this._pending.isEmpty() || this._candidates.hasNext()) {
+			KItemset candidate = null;
+			if(this._pending.isEmpty()) {
+				candidate = this._candidates.next();
+				this._lastIndex = this._consumed++;
+			} else {
+				candidate = this._pending.pollFirst();
+				this._lastIndex = this._pendingIndices.pollFirst();
+			}
+			if(candidate.size() >= 2 && this._codeTable.getCode(candidate) == null) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private Change evaluate(KItemset candidate) {
+		int support = (candidate.getSupport() > 0) ? candidate.getSupport() : this._codeTable.support(candidate);
+		return this._codeTable.evaluateAddition(candidate, support);
+	}
+
+}
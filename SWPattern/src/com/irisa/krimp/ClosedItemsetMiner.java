@@ -0,0 +1,300 @@
+package com.irisa.krimp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+import com.irisa.exception.LogicException;
+import com.irisa.krimp.data.CompressedBitmap;
+import com.irisa.krimp.data.DataIndexes;
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Closed frequent itemsets of a transaction set, mined by prefix-preserving closure extension as in LCM (Uno et al., LCM ver. 2, 2004) on the vertical representation of DataIndexes.
+ * Iterates over the closed itemsets of at least two items, with their support, in standard candidate order: the KRIMP candidates, as given by "fic -cls-1d".
+ *
+ * The itemsets are not materialised: each pass of the enumeration keeps only the next itemsets in candidate order in a bounded buffer, raising its minimal support once the buffer is full.
+ * The next pass starts after the last itemset returned, so the memory used is bounded by the size of the buffer whatever the number of closed itemsets.
+ * Itemsets of equal support and size are ordered by their items.
+ * @author pmaillot
+ *
+ */
+public class ClosedItemsetMiner implements Iterable<KItemset> {
+
+	private static Logger logger = Logger.getLogger(ClosedItemsetMiner.class);
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private DataIndexes _index;
+	private int _minSupport;
+	private int _bufferSize = DEFAULT_BUFFER_SIZE;
+
+	private int[] _items = null; // Frequent items, by decreasing support
+	private CompressedBitmap[] _itemTransactions = null;
+	private int _nbTransactions = 0;
+
+	/**
+	 * Standard candidate order, itemsets of equal support and size ordered by their items
+	 */
+	private static Comparator<KItemset> candidateOrderComparator = new Comparator<KItemset>() {
+		@Override
+		public int compare(KItemset o1, KItemset o2) {
+			int result = CodeTable.standardCandidateOrderComparator.compare(o1, o2);
+			for(int i = 0; result == 0 && i < o1.size(); i++) {
+				result = Integer.compare(o1.itemAt(i), o2.itemAt(i));
+			}
+			return result;
+		}
+	};
+
+	/**
+	 * @param index Indexes of the transactions
+	 * @param minSupport Minimal support of the itemsets, counting the multiplicity of the transactions
+	 */
+	public ClosedItemsetMiner(DataIndexes index, int minSupport) {
+		this._index = index;
+		this._minSupport = Math.max(1, minSupport);
+	}
+
+	public int getMinSupport() {
+		return _minSupport;
+	}
+
+	public int getBufferSize() {
+		return _bufferSize;
+	}
+
+	/**
+	 * @param bufferSize Maximal number of itemsets kept in memory by a pass of the enumeration, DEFAULT_BUFFER_SIZE by default
+	 */
+	public void setBufferSize(int bufferSize) {
+		if(bufferSize < 1) {
+			throw new LogicException("Buffer size must be positive: " + bufferSize);
+		}
+		this._bufferSize = bufferSize;
+	}
+
+	@Override
+	public Iterator<KItemset> iterator() {
+		initItems();
+		return new Iterator<KItemset>() {
+			private ArrayList<KItemset> _batch = new ArrayList<KItemset>();
+			private int _next = 0;
+			private long _bound = Long.MAX_VALUE; // Key of the next itemsets, at most
+			private boolean _finished = false;
+
+			private void fill() {
+				while(_next >= _batch.size() && ! _finished) {
+					PriorityQueue<KItemset> buffer = enumerate(0, _bound, _bufferSize);
+					_batch = new ArrayList<KItemset>(buffer);
+					_batch.sort(candidateOrderComparator);
+					_next = 0;
+					if(_batch.size() < _bufferSize) {
+						_finished = true;
+					} else {
+						long lastKey = key(_batch.get(_batch.size() - 1));
+						if(key(_batch.get(0)) == lastKey) {
+							// All the itemsets of the buffer have the same support and size, the whole group is needed in memory
+							logger.warn("More than " + _bufferSize + " closed itemsets of support " + _batch.get(0).getSupport() + " and size " + _batch.get(0).size() + ", exceeding the buffer");
+							buffer = enumerate(lastKey, lastKey, Integer.MAX_VALUE);
+							_batch = new ArrayList<KItemset>(buffer);
+							_batch.sort(candidateOrderComparator);
+							_bound = lastKey - 1;
+						} else {
+							// The itemsets of the last key may be incomplete, they are returned by the next pass
+							_batch.removeIf(itemset -> key(itemset) == lastKey);
+							_bound = lastKey;
+						}
+					}
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				fill();
+				return _next < _batch.size();
+			}
+
+			@Override
+			public KItemset next() {
+				if(! hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return _batch.get(_next++);
+			}
+		};
+	}
+
+	/**
+	 * Frequent items, by decreasing support so that the enumeration tree is narrow at its root
+	 */
+	private void initItems() {
+		if(this._items != null) {
+			return;
+		}
+		ArrayList<Integer> frequentItems = new ArrayList<Integer>();
+		Iterator<Integer> itItems = this._index.itemIterator();
+		while(itItems.hasNext()) {
+			int item = itItems.next();
+			if(this._index.getWeightedSupport(this._index.getItemTransactionBitmap(item)) >= this._minSupport) {
+				frequentItems.add(item);
+			}
+		}
+		frequentItems.sort((item1, item2) -> - Integer.compare(this._index.getItemTransactionBitmap(item1).cardinality(), this._index.getItemTransactionBitmap(item2).cardinality()));
+		this._items = new int[frequentItems.size()];
+		this._itemTransactions = new CompressedBitmap[frequentItems.size()];
+		for(int i = 0; i < this._items.length; i++) {
+			this._items[i] = frequentItems.get(i);
+			this._itemTransactions[i] = this._index.getItemTransactionBitmap(this._items[i]);
+		}
+		this._nbTransactions = this._index.getNumberOfTransactions();
+	}
+
+	/**
+	 * Key of the standard candidate order, by support then size
+	 * @param itemset
+	 * @return
+	 */
+	private static long key(KItemset itemset) {
+		return ((long) itemset.getSupport() << 32) | itemset.size();
+	}
+
+	/**
+	 * One pass of the enumeration
+	 * @param lowerBound Minimal key of the itemsets returned
+	 * @param upperBound Maximal key of the itemsets returned
+	 * @param capacity Maximal number of itemsets returned
+	 * @return The first closed itemsets in standard candidate order whose key is between the bounds, the last one in candidate order at the head
+	 */
+	private PriorityQueue<KItemset> enumerate(long lowerBound, long upperBound, int capacity) {
+		PriorityQueue<KItemset> result = new PriorityQueue<KItemset>(Math.min(capacity, 1024), candidateOrderComparator.reversed());
+		int nbClosed = 0;
+
+		// Closure of the empty itemset: the items of all the transactions
+		ArrayList<Integer> rootItems = new ArrayList<Integer>();
+		for(int i = 0; i < this._items.length; i++) {
+			if(this._itemTransactions[i].cardinality() == this._nbTransactions) {
+				rootItems.add(i);
+			}
+		}
+		boolean[] inItemset = new boolean[this._items.length];
+		int[] itemset = new int[this._items.length];
+		int size = 0;
+		for(int i : rootItems) {
+			inItemset[i] = true;
+			itemset[size++] = i;
+		}
+		BitSet allTransactions = new BitSet(this._nbTransactions);
+		allTransactions.set(0, this._nbTransactions);
+		int rootSupport = this._index.getWeightedSupport(CompressedBitmap.valueOf(allTransactions));
+		if(this._nbTransactions > 0 && rootSupport >= this._minSupport) {
+			nbClosed++;
+			offer(result, itemset, size, rootSupport, lowerBound, upperBound, capacity);
+			nbClosed += extend(result, itemset, size, inItemset, null, -1, lowerBound, upperBound, capacity);
+		}
+		logger.debug(nbClosed + " closed itemsets enumerated, " + result.size() + " kept");
+		return result;
+	}
+
+	/**
+	 * Prefix-preserving closure extensions of a closed itemset
+	 * @param result
+	 * @param itemset Positions of the items of the closed itemset in _items, in the first size cells
+	 * @param size
+	 * @param inItemset
+	 * @param transactions Transactions containing the itemset, null for all
+	 * @param core Core index of the itemset: position of the last item added before its closure, -1 for the closure of the empty itemset
+	 * @param lowerBound
+	 * @param upperBound
+	 * @param capacity
+	 * @return Number of closed itemsets enumerated
+	 */
+	private int extend(PriorityQueue<KItemset> result, int[] itemset, int size, boolean[] inItemset, CompressedBitmap transactions, int core, long lowerBound, long upperBound, int capacity) {
+		int nbClosed = 0;
+		for(int extension = core + 1; extension < this._items.length; extension++) {
+			if(inItemset[extension]) {
+				continue;
+			}
+			CompressedBitmap extensionTransactions = (transactions == null) ? this._itemTransactions[extension] : transactions.and(this._itemTransactions[extension]);
+			int support = this._index.getWeightedSupport(extensionTransactions);
+			if(support < minSupport(result, lowerBound, capacity)) {
+				continue;
+			}
+			int nbExtensionTransactions = extensionTransactions.cardinality();
+
+			// Prefix preservation: no item before the extension may be added by the closure
+			boolean preserved = true;
+			for(int i = 0; i < extension && preserved; i++) {
+				if(! inItemset[i] && this._itemTransactions[i].andCardinality(extensionTransactions) == nbExtensionTransactions) {
+					preserved = false;
+				}
+			}
+			if(! preserved) {
+				continue;
+			}
+
+			int closureSize = size;
+			itemset[closureSize++] = extension;
+			inItemset[extension] = true;
+			for(int i = extension + 1; i < this._items.length; i++) {
+				if(! inItemset[i] && this._itemTransactions[i].andCardinality(extensionTransactions) == nbExtensionTransactions) {
+					itemset[closureSize++] = i;
+					inItemset[i] = true;
+				}
+			}
+
+			nbClosed++;
+			offer(result, itemset, closureSize, support, lowerBound, upperBound, capacity);
+			nbClosed += extend(result, itemset, closureSize, inItemset, extensionTransactions, extension, lowerBound, upperBound, capacity);
+
+			for(int i = size; i < closureSize; i++) {
+				inItemset[itemset[i]] = false;
+			}
+		}
+		return nbClosed;
+	}
+
+	/**
+	 * @param result
+	 * @param lowerBound
+	 * @param capacity
+	 * @return Minimal support of the itemsets that can still enter the buffer, the support of the extensions of an itemset being at most its own
+	 */
+	private int minSupport(PriorityQueue<KItemset> result, long lowerBound, int capacity) {
+		int support = Math.max(this._minSupport, (int) (lowerBound >>> 32));
+		if(result.size() < capacity) {
+			return support;
+		}
+		return Math.max(support, result.peek().getSupport());
+	}
+
+	/**
+	 * Adds the itemset to the buffer if it is among the first ones in candidate order, with at least two items and a key between the bounds
+	 */
+	private void offer(PriorityQueue<KItemset> result, int[] itemset, int size, int support, long lowerBound, long upperBound, int capacity) {
+		long key = (long) support << 32 | size;
+		if(size < 2 || key < lowerBound || key > upperBound) {
+			return;
+		}
+		int[] items = new int[size];
+		for(int i = 0; i < size; i++) {
+			items[i] = this._items[itemset[i]];
+		}
+		Arrays.sort(items);
+		KItemset candidate = new KItemset(items);
+		candidate.setSupport(support);
+		if(result.size() < capacity) {
+			result.add(candidate);
+		} else if(candidateOrderComparator.compare(candidate, result.peek()) < 0) {
+			result.poll();
+			result.add(candidate);
+		}
+	}
+
+}
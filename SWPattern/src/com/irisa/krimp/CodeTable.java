@@ -1,5 +1,6 @@
 package com.irisa.krimp;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -10,6 +11,8 @@ import org.apache.log4j.Logger;
 
 import com.irisa.exception.LogicException;
 import com.irisa.jenautils.Couple;
+import com.irisa.krimp.cover.CoverEngine;
+import com.irisa.krimp.cover.LinearCover;
 import com.irisa.krimp.data.DataIndexes;
 import com.irisa.krimp.data.ItemsetSet;
 import com.irisa.krimp.data.KItemset;
@@ -35,11 +38,20 @@ public class CodeTable {
 	@Deprecated
 	private DataIndexes _index = null;
 	private long _usageTotal = 0;
+	private KItemset[] _transactionArray = null; // Transactions in the order of _transactions, for the incremental updates of the usages
+	private HashMap<KItemset, BitSet> _codeCoverIndex = null; // Transactions (by index in _transactionArray) whose cover uses each code, built by updateUsages()
+	private ItemsetSet[] _transactionCovers = null; // Codes of the cover of each transaction of _transactionArray, built with _codeCoverIndex
 
 	// 	private HashMap<Itemset, BitSet> _codeSupportVector = new HashMap<Itemset, BitSet>();
 	
 	private boolean _standardFlag = false; // Set true if it is the standard codetable
 	private CodeTable _standardCT = null; // Codetable containing only singletons for the coding length of a CT
+	private boolean _standardCTFromCodes = false; // Set true if _standardCT is derived from the codes, and thus built again after they change
+	private long _standardCTVersion = -1; // Version of the codes from which _standardCT was derived
+	private long _version = 0; // Incremented each time the codes, their order or their usages change
+	private CodeTableSnapshot _snapshot = null; // Frozen copy of the codes shared by the measures, null if the codes changed since the last one
+	private volatile CoverCodes _coverCodes = null; // Codes covering the transactions of codify(), null if not built yet
+	private ThreadLocal<Coverer> _coverers = ThreadLocal.withInitial(Coverer::new); // Cover algorithm and buffers of codify() for each thread
 	
 	@Deprecated
 	/**
@@ -91,7 +103,7 @@ public class CodeTable {
 			
 		} else {
 			this._codes = codes;
-			this._standardCT = new CodeTable(codes, true);
+			this._standardCTFromCodes = true; // built on the first call to getStandardCodeTable()
 		}
 		recomputeUsageTotal();
 	}
@@ -125,8 +137,12 @@ public class CodeTable {
 		return stdCodes;
 	}
 	
+	/**
+	 * Force the standard code table to be derived again from the codes on its next access
+	 */
 	public void regenerateStandardCodeTable() {
-		this._standardCT = new CodeTable(_codes, true);
+		this._standardCTFromCodes = true;
+		this._standardCT = null;
 	}
 
 	@Deprecated
@@ -171,6 +187,9 @@ public class CodeTable {
 		_index = ct._index; // only depend on transactions and unmutable, no copy needed
 				
 		_standardCT = ct._standardCT;
+		_standardCTFromCodes = ct._standardCTFromCodes;
+		_standardCTVersion = ct._standardCTVersion;
+		_version = ct._version;
 		
 		// CB: We ensure that the copy is in standardCoverageOrder 
 //		orderCodesStandardCoverageOrder();
@@ -189,9 +208,25 @@ public class CodeTable {
 		return this._standardFlag;
 	}
 	
-	public CodeTable getStandardCodeTable() {
+	/**
+	 * The standard code table derived from the codes is only built again if the codes or their usages changed since the last call.
+	 * @return The standard code table, null for a standard code table
+	 */
+	public synchronized CodeTable getStandardCodeTable() {
+		if(this._standardCTFromCodes && ! this._standardFlag 
+				&& (this._standardCT == null || this._standardCTVersion != this._version)) {
+			this._standardCT = new CodeTable(this._codes, true);
+			this._standardCTVersion = this._version;
+		}
 		return this._standardCT;
 	}
+	
+	/**
+	 * @return Counter incremented each time the codes, their order or their usages change
+	 */
+	public synchronized long getVersion() {
+		return this._version;
+	}
 
 	@Deprecated
 	/**
@@ -201,6 +236,7 @@ public class CodeTable {
 	 */
 	public void setTransactionsReinitializing(ItemsetSet transactions) {
 		this._transactions = transactions;
+		this._codeCoverIndex = null;
 		this._index = new DataIndexes(transactions);
 		init();
 	}
@@ -214,6 +250,7 @@ public class CodeTable {
 	 */
 	public void setTransactions(ItemsetSet transactions) {
 		this._transactions = transactions;
+		this._codeCoverIndex = null;
 		this._index = new DataIndexes(transactions);
 	}
 
@@ -232,11 +269,36 @@ public class CodeTable {
 		return this._usageTotal;
 	}
 	
+	/**
+	 * Must also be called after any direct modification of the codes returned by getCodes(), the next change of codes will then cover again all the transactions
+	 */
 	public void recomputeUsageTotal() {
 		this._usageTotal = 0;
 		for(KItemset code : _codes) {
 			this._usageTotal += code.getUsage();
 		}
+		this._codeCoverIndex = null;
+		codesChanged();
+	}
+	
+	/**
+	 * Frozen copy of the codes in their current order with their current usages, taken on the first call after a modification of the code table.
+	 * It can be shared by measures running concurrently, none of them modifies it.
+	 * @return
+	 */
+	public synchronized CodeTableSnapshot getSnapshot() {
+		if(this._snapshot == null) {
+			this._snapshot = new CodeTableSnapshot(this);
+		}
+		return this._snapshot;
+	}
+	
+	/**
+	 * To be called each time the codes, their order or their usages change
+	 */
+	private synchronized void codesChanged() {
+		this._version++;
+		this._snapshot = null;
 	}
 
 	@Deprecated
@@ -389,7 +451,7 @@ public class CodeTable {
 				// CB: we also need the code length according to the ST: we codify the codeusing it
 				double stcL = 0 ;
 				if (!_standardFlag) {
-					stcL = this._standardCT.codeLengthOfCodeAccordingST(code);
+					stcL = this.getStandardCodeTable().codeLengthOfCodeAccordingST(code);
 				}
 				// else => it is a 0.0
 				
@@ -417,7 +479,7 @@ public class CodeTable {
 			Iterator<Integer> itCode = code.iterator();
 			while(itCode.hasNext()) {
 				Integer item = itCode.next();
-				result+= this._standardCT.codeLengthOfCodeAccordingST(Utils.createCodeSingleton(item)); 
+				result+= this.getStandardCodeTable().codeLengthOfCodeAccordingST(Utils.createCodeSingleton(item)); 
 			}
 		}
 		return result; 
@@ -461,31 +523,85 @@ public class CodeTable {
 	@Deprecated
 	/**
 	 * @Deprecated: Moved to CodificationMeasure
-	 * Initialize the usage of each code according to the cover
+	 * Initialize the usage of each code according to the cover, and the index of the transactions covered by each code
 	 * PRE: the codeTable must be in standardCoverTable order
 	 */
 	public void updateUsages() {
 		this._usageTotal = 0;
+		this._transactionArray = this._transactions.toArray(new KItemset[0]);
+		this._codeCoverIndex = new HashMap<KItemset, BitSet>();
+		this._transactionCovers = new ItemsetSet[this._transactionArray.length];
 		
 		Iterator<KItemset> itCodes = this.codeIterator();
 		while(itCodes.hasNext()) {
 			KItemset code = itCodes.next();
 			_itemsetUsage.replace(code, 0); 
 			code.setUsage(0);
+			this._codeCoverIndex.put(code, new BitSet());
 		}
 		
-		for (KItemset t: this._transactions) {
-			ItemsetSet codes = this.codify(t); 
-			for (KItemset aux: codes) {
-				aux.setUsage(aux.getUsage()+1);
-				_itemsetUsage.replace(aux, _itemsetUsage.get(aux)+1); 
-			}
-			this._usageTotal+=codes.size(); 
+		for (int iTrans = 0; iTrans < this._transactionArray.length; iTrans++) {
+			this.coverUpdatingUsages(iTrans);
 		}
+		codesChanged();
 		
 		
 		
 		
+	}
+	
+	/**
+	 * Add the codes of the cover of a transaction to the usages and to the cover index
+	 * @param iTrans Index of the transaction in _transactionArray, must not be in the cover index yet
+	 */
+	private void coverUpdatingUsages(int iTrans) {
+		ItemsetSet codes = this.codify(this._transactionArray[iTrans]); 
+		for (KItemset aux: codes) {
+			aux.setUsage(aux.getUsage()+1);
+			_itemsetUsage.replace(aux, _itemsetUsage.get(aux)+1); 
+			this._codeCoverIndex.get(aux).set(iTrans);
+		}
+		this._transactionCovers[iTrans] = codes;
+		this._usageTotal+=codes.size(); 
+	}
+	
+	/**
+	 * Cover again some transactions after a change of the codes, adjusting the usages by the difference between their old and new covers.
+	 * Only the codes of the old covers of these transactions are visited.
+	 * PRE: the codeTable must be in standardCoverTable order, the cover index must contain every code
+	 * @param transactions Indices in _transactionArray of the transactions to cover again
+	 */
+	private void recoverUpdatingUsages(BitSet transactions) {
+		for (int iTrans = transactions.nextSetBit(0); iTrans >= 0; iTrans = transactions.nextSetBit(iTrans + 1)) {
+			for (KItemset code: this._transactionCovers[iTrans]) {
+				BitSet codeTransactions = this._codeCoverIndex.get(code);
+				if(codeTransactions != null) { // A removed code has already left the index and the usage total
+					code.setUsage(code.getUsage() - 1);
+					_itemsetUsage.replace(code, _itemsetUsage.get(code) - 1); 
+					this._usageTotal--;
+					codeTransactions.clear(iTrans);
+				}
+			}
+			this.coverUpdatingUsages(iTrans);
+		}
+	}
+	
+	/**
+	 * @param code
+	 * @return Indices in _transactionArray of the transactions containing code, the only ones whose cover can use it
+	 */
+	private BitSet containingTransactions(KItemset code) {
+		if(this._index != null) {
+			return this._index.getCodeTransactionVector(code);
+		}
+		BitSet result = new BitSet(this._transactionArray.length);
+		for (int iTrans = 0; iTrans < this._transactionArray.length; iTrans++) {
+			KItemset trans = this._transactionArray[iTrans];
+			if(trans.mayContainAll(code) && trans.containsAll(code)) {
+				result.set(iTrans);
+			}
+		}
+		return result;
 	}
 	
 	/**
@@ -567,7 +683,7 @@ public class CodeTable {
 			if(isCoverCandidate(trans, tmpCode)) { // If the size of code is correct and it is contained in trans
 				if(tmpCode.equals(code)) { // if code cover = OK
 					return true;
-				} else if (tmpCode.intersection(code).size() != 0) { // if another cover code overlap with code = !OK
+				} else if (tmpCode.intersects(code)) { // if another cover code overlap with code = !OK
 					return false;
 				} else { // transaction partially covered but there is still some chances
 //					KItemset covered = CodeTable.itemsetSubstraction(trans, tmpCode);
@@ -584,25 +700,13 @@ public class CodeTable {
 	 * 
 	 * Codifying function according to the KRIMP paper
 	 * Deprecated: Moved to CodificationMeasure
+	 * Can be called by several threads at once, as long as the code table is not modified meanwhile. 
 	 * 
 	 * @param trans
 	 * @return
 	 */
 	public ItemsetSet codify(KItemset trans) {
-		KItemset auxTrans = new KItemset(trans);
-		ItemsetSet result = new ItemsetSet(); 
-		Iterator<KItemset> itIs = codeIterator();
-		KItemset auxCode = null; 
-		while (itIs.hasNext() && (auxTrans.size() != 0) ) {
-			auxCode = itIs.next(); 
-			if (auxTrans.containsAll(auxCode)) {
-				result.add(auxCode); 
-//				auxTrans = auxTrans.cloneItemSetMinusAnItemset(auxCode); 
-				auxTrans = auxTrans.substraction(auxCode); 
-			}
-		}
-		assert trans.size() == 0; // this should always happen 
-		return result; 
+		return this.codifyAware(trans).getFirst(); 
 	}	
 	
 	/** 
@@ -612,26 +716,67 @@ public class CodeTable {
 	 * 
 	 *  It returns the codes used in the partial coverage, and the set of items (singletons) 
 	 *  that have not been covered. 
+	 *  
+	 *  Can be called by several threads at once, as long as the code table is not modified meanwhile. 
 	 * 
 	 * @param trans
 	 * @return
 	 */
 	
 	public Couple<ItemsetSet, KItemset> codifyAware (KItemset trans)  {
-		KItemset auxTrans = new KItemset(trans);
+		Coverer coverer = this.coverer();
+		int nbCodes = coverer._engine.cover(trans, coverer._codeBuffer, coverer._uncovered);
 		ItemsetSet result = new ItemsetSet(); 
-		Iterator<KItemset> itIs = codeIterator();
-		KItemset auxCode = null; 
-		while (itIs.hasNext() && (auxTrans.size() != 0) ) {
-			auxCode = itIs.next(); 
-			if (auxTrans.containsAll(auxCode)) {
-				result.add(auxCode); 
-				auxTrans = auxTrans.substraction(auxCode); 
-			}
+		for (int iCode = 0; iCode < nbCodes; iCode++) {
+			result.add(coverer._codes._codes[coverer._codeBuffer[iCode]]); 
 		}
 		// currently, trans can be non-empty
 		// we return both the codes used, and the remaining non-covered part of the transaction (new items) 
-		return new Couple<ItemsetSet, KItemset>(result, auxTrans); 
+		return new Couple<ItemsetSet, KItemset>(result, new KItemset(coverer._uncovered)); 
+	}
+	
+	/**
+	 * Codes of the code table in their order at a version, never modified once built
+	 */
+	private static final class CoverCodes {
+		private final long _version;
+		private final KItemset[] _codes;
+		
+		private CoverCodes(long version, KItemset[] codes) {
+			this._version = version;
+			this._codes = codes;
+		}
+	}
+	
+	/**
+	 * Cover algorithm and buffers of codify() and codifyAware() in a thread
+	 */
+	private static final class Coverer {
+		private CoverCodes _codes = null;
+		private CoverEngine _engine = null;
+		private int[] _codeBuffer = null;
+		private KItemset _uncovered = new KItemset();
+	}
+	
+	/**
+	 * Cover algorithm of codify() and codifyAware() for the current thread, built again after a change of the codes or of their order.
+	 * Each thread has its own, so that the code table can be covered by several threads at once as long as it is not modified.
+	 * @return
+	 */
+	private Coverer coverer() {
+		long version = this.getVersion();
+		CoverCodes codes = this._coverCodes;
+		if(codes == null || codes._version != version) {
+			codes = new CoverCodes(version, this._codes.toArray(new KItemset[this._codes.size()]));
+			this._coverCodes = codes;
+		}
+		Coverer result = this._coverers.get();
+		if(result._codes != codes) {
+			result._codes = codes;
+			result._engine = new LinearCover(codes._codes);
+			result._codeBuffer = new int[codes._codes.length];
+		}
+		return result;
 	}
 
 	@Deprecated
@@ -642,8 +787,16 @@ public class CodeTable {
 	public void removeCode(KItemset pruneCandidate) {
 		this._codes.remove(pruneCandidate);
 		this._itemsetUsage.remove(pruneCandidate);
+		codesChanged();
 		// CB: removing from an ordered list must not alter the order
-		updateUsages(); // Have to maintain the thing up to date ? 
+		if(this._codeCoverIndex == null) {
+			updateUsages(); // Have to maintain the thing up to date ? 
+		} else if(this._codeCoverIndex.containsKey(pruneCandidate)) { // Only the transactions whose cover used the code can change
+			BitSet covered = this._codeCoverIndex.remove(pruneCandidate);
+			this._usageTotal -= covered.cardinality();
+			recoverUpdatingUsages(covered);
+			codesChanged();
+		}
 	}
 	
 	public boolean contains(KItemset candidate) {
@@ -662,8 +815,15 @@ public class CodeTable {
 			this._itemsetUsage.put(code, this.getUsage(code));
 			// after adding it we have to reorder 
 			orderCodesStandardCoverageOrder();
-			this.updateUsages(); // maintain the usage index uptodate ?
-			
+			if(this._codeCoverIndex == null) {
+				this.updateUsages(); // maintain the usage index uptodate ?
+			} else { // Only the transactions containing the code can change of cover
+				code.setUsage(0);
+				this._itemsetUsage.put(code, 0);
+				this._codeCoverIndex.put(code, new BitSet());
+				recoverUpdatingUsages(containingTransactions(code));
+				codesChanged();
+			}
 		}
 	}
 	
@@ -677,6 +837,7 @@ public class CodeTable {
 				assert (! otherCode.contains(code)); // tmp safety test to check if their is no need to update usages
 			}
 			this._codes.addLast(code);
+			this._codeCoverIndex = null; // Its usage is not the one of the cover
 		}
 		orderCodesStandardCoverageOrder();
 	}
@@ -703,10 +864,12 @@ public class CodeTable {
 	
 	public void orderCodesStandardCoverageOrder() {
 		Collections.sort(this._codes, CodeTable.standardCoverOrderComparator);
+		codesChanged();
 	}
 	
 	public void orderCodesStandardCandidateOrder() {
 		Collections.sort(this._codes, CodeTable.standardCandidateOrderComparator);
+		codesChanged();
 	}
 	
 	@Deprecated
@@ -758,6 +921,7 @@ public class CodeTable {
 	    	}
 	    }	
 		_usageTotal += totalAdded; 
+		codesChanged();
 	}
 	
 }
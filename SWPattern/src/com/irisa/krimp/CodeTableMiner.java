@@ -0,0 +1,280 @@
+package com.irisa.krimp;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.log4j.Logger;
+
+import com.irisa.exception.LogicException;
+import com.irisa.krimp.data.DataIndexes;
+import com.irisa.krimp.data.TransactionSet;
+
+/**
+ * Common part of the code table miners running on the transactions in memory: pruning, parallel evaluation of the candidates and anytime mining.
+ *
+ * The mining can be bounded by a wall-clock time or a number of candidates evaluated, it then returns the code table reached so far, the best one found since an accepted candidate always decreases L(D, CT).
+ * Its state can be checkpointed periodically to a binary file, and a later run of the same miner on the same transactions can resume from it, see MiningCheckpoint.
+ * A resumed mining gives the same code table as an uninterrupted one.
+ * @author pmaillot
+ *
+ */
+public abstract class CodeTableMiner {
+
+	private static Logger logger = Logger.getLogger(CodeTableMiner.class);
+
+	public static final int DEFAULT_SPECULATION_WINDOW = 4 * ForkJoinPool.getCommonPoolParallelism();
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = 10 * 60 * 1000L; // 10 minutes
+	public static final String CHECKPOINT_EXTENSION = ".checkpoint";
+
+	protected TransactionSet _transactions;
+	protected DataIndexes _index;
+	private boolean _pruning = true;
+	private boolean _parallelEvaluation = false;
+	private int _speculationWindow = DEFAULT_SPECULATION_WINDOW;
+	private long _timeBudget = 0; // In milliseconds, 0 for none
+	private long _candidateBudget = 0; // 0 for none
+	private String _checkpointFilename = null;
+	private long _checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL; // In milliseconds
+	private boolean _resuming = false;
+
+	// State of the current mining
+	private int _minSupport = 0;
+	private long _resumedCursor = 0;
+	private long _deadline = Long.MAX_VALUE; // System.nanoTime() at which the time budget is exhausted
+	private long _nextCheckpoint = Long.MAX_VALUE;
+	private int _nbAccepted = 0;
+	private int _nbPruned = 0;
+	private boolean _stopped = false;
+	private boolean _finished = false;
+
+	/**
+	 * @param transactions Transactions to be compressed, identical transactions can be collapsed
+	 * @param index Indexes of the transactions, shared with the measures of the same transactions
+	 */
+	protected CodeTableMiner(TransactionSet transactions, DataIndexes index) {
+		this._transactions = transactions;
+		this._index = index;
+	}
+
+	/**
+	 * @param transactionsFilename Transactions (.dat) of the code table
+	 * @return The file of the checkpoint of the mining of its code table, next to it
+	 */
+	public static String checkpointFilename(String transactionsFilename) {
+		return transactionsFilename + CHECKPOINT_EXTENSION;
+	}
+
+	/**
+	 * @return Name of the algorithm, identifying its checkpoints
+	 */
+	protected abstract String getAlgorithmName();
+
+	public boolean isPruning() {
+		return _pruning;
+	}
+
+	/**
+	 * Choose to prune the code table after each accepted candidate, true by default
+	 * @param pruning
+	 */
+	public void setPruning(boolean pruning) {
+		this._pruning = pruning;
+	}
+
+	public boolean isParallelEvaluation() {
+		return _parallelEvaluation;
+	}
+
+	/**
+	 * Choose to evaluate the candidates in parallel on the common ForkJoinPool, false by default.
+	 * The code table mined is the same as in sequence.
+	 * @param parallelEvaluation
+	 */
+	public void setParallelEvaluation(boolean parallelEvaluation) {
+		this._parallelEvaluation = parallelEvaluation;
+	}
+
+	public int getSpeculationWindow() {
+		return _speculationWindow;
+	}
+
+	/**
+	 * @param speculationWindow Number of candidates evaluated at once in parallel against the same code table, DEFAULT_SPECULATION_WINDOW by default
+	 */
+	public void setSpeculationWindow(int speculationWindow) {
+		this._speculationWindow = speculationWindow;
+	}
+
+	public long getTimeBudget() {
+		return _timeBudget;
+	}
+
+	/**
+	 * @param timeBudget Wall-clock time after which the mining stops, in milliseconds, 0 for none
+	 */
+	public void setTimeBudget(long timeBudget) {
+		this._timeBudget = timeBudget;
+	}
+
+	public long getCandidateBudget() {
+		return _candidateBudget;
+	}
+
+	/**
+	 * @param candidateBudget Number of candidates evaluated after which the mining stops, 0 for none
+	 */
+	public void setCandidateBudget(long candidateBudget) {
+		this._candidateBudget = candidateBudget;
+	}
+
+	public String getCheckpointFilename() {
+		return _checkpointFilename;
+	}
+
+	/**
+	 * @param checkpointFilename File to which the state of the mining is saved periodically and at its end, see checkpointFilename(), null for none
+	 */
+	public void setCheckpointFilename(String checkpointFilename) {
+		this._checkpointFilename = checkpointFilename;
+	}
+
+	public long getCheckpointInterval() {
+		return _checkpointInterval;
+	}
+
+	/**
+	 * @param checkpointInterval Time between two checkpoints, in milliseconds, DEFAULT_CHECKPOINT_INTERVAL by default
+	 */
+	public void setCheckpointInterval(long checkpointInterval) {
+		this._checkpointInterval = checkpointInterval;
+	}
+
+	public boolean isResuming() {
+		return _resuming;
+	}
+
+	/**
+	 * Choose to resume the mining from the checkpoint file if it exists, false by default
+	 * @param resuming
+	 */
+	public void setResuming(boolean resuming) {
+		this._resuming = resuming;
+	}
+
+	/**
+	 * @return true if the last mining went through all its candidates, false if it was stopped by a budget
+	 */
+	public boolean isFinished() {
+		return _finished;
+	}
+
+	/**
+	 * Start a mining: code table of the singletons, with the codes of the checkpoint if resuming from one
+	 * @param minSupport Minimal support of the candidates, 0 if they are given
+	 * @return
+	 */
+	IncrementalCodeTable startMining(int minSupport) {
+		long startTime = System.nanoTime();
+		this._minSupport = minSupport;
+		this._resumedCursor = 0;
+		this._nbAccepted = 0;
+		this._nbPruned = 0;
+		this._stopped = false;
+		this._finished = false;
+		this._deadline = (this._timeBudget > 0) ? startTime + this._timeBudget * 1000000L : Long.MAX_VALUE;
+		this._nextCheckpoint = (this._checkpointFilename != null) ? startTime + this._checkpointInterval * 1000000L : Long.MAX_VALUE;
+
+		IncrementalCodeTable result = new IncrementalCodeTable(this._transactions, this._index);
+		logger.debug("Standard code table: L(D, CT) = " + result.getTotalLength());
+		if(this._resuming && this._checkpointFilename != null && new File(this._checkpointFilename).exists()) {
+			MiningCheckpoint checkpoint = MiningCheckpoint.read(this._checkpointFilename);
+			if(checkpoint != null) {
+				if(! checkpoint.matches(this.getAlgorithmName(), minSupport, this._transactions)) {
+					throw new LogicException("Checkpoint " + this._checkpointFilename + " does not come from the " + this.getAlgorithmName() + " mining of these transactions with a minimal support of " + minSupport);
+				}
+				checkpoint.restore(result);
+				this._resumedCursor = checkpoint.getCursor();
+				logger.debug("Resumed from " + this._checkpointFilename + ": " + checkpoint.getCodeCount() + " codes, " + this._resumedCursor + " candidates passed, L(D, CT) = " + result.getTotalLength());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Number of candidates passed by the mining resumed, 0 if not resumed
+	 */
+	long getResumedCursor() {
+		return this._resumedCursor;
+	}
+
+	/**
+	 * @param codeTable
+	 * @return Evaluator of the candidates against the code table, pausing for the budgets and the checkpoints
+	 */
+	CandidateEvaluator newEvaluator(IncrementalCodeTable codeTable) {
+		CandidateEvaluator result = new CandidateEvaluator(codeTable, this._parallelEvaluation, this._speculationWindow);
+		result.setMaxDecided((this._candidateBudget > 0) ? this._candidateBudget : Long.MAX_VALUE);
+		result.setPauseTime(Math.min(this._deadline, this._nextCheckpoint));
+		return result;
+	}
+
+	/**
+	 * Next accepted candidate, writing the checkpoints when due
+	 * @param codeTable
+	 * @param evaluator
+	 * @return The change adding the candidate, null if there is none or if a budget is exhausted
+	 */
+	IncrementalCodeTable.Change nextAccepted(IncrementalCodeTable codeTable, CandidateEvaluator evaluator) {
+		while(true) {
+			long now = System.nanoTime();
+			if(now >= this._deadline || (this._candidateBudget > 0 && evaluator.getDecidedCount() >= this._candidateBudget)) {
+				logger.debug("Budget exhausted after " + evaluator.getDecidedCount() + " candidates");
+				this._stopped = true;
+				return null;
+			}
+			if(now >= this._nextCheckpoint) {
+				writeCheckpoint(codeTable, evaluator);
+				this._nextCheckpoint = now + this._checkpointInterval * 1000000L;
+				evaluator.setPauseTime(Math.min(this._deadline, this._nextCheckpoint));
+			}
+			IncrementalCodeTable.Change change = evaluator.nextAccepted();
+			if(change != null || ! evaluator.isPaused()) {
+				return change;
+			}
+		}
+	}
+
+	/**
+	 * Commit an accepted change, then prune the code table if asked
+	 * @param codeTable
+	 * @param change
+	 */
+	void accept(IncrementalCodeTable codeTable, IncrementalCodeTable.Change change) {
+		codeTable.commit(change);
+		this._nbAccepted++;
+		if(this._pruning) {
+			this._nbPruned += codeTable.prune(change.decreasedCodes());
+		}
+	}
+
+	/**
+	 * End of a mining, finished or stopped by a budget, writing a last checkpoint
+	 * @param codeTable
+	 * @param evaluator
+	 * @return The code table mined, in standard cover order
+	 */
+	CodeTable finishMining(IncrementalCodeTable codeTable, CandidateEvaluator evaluator) {
+		this._finished = ! this._stopped;
+		if(this._checkpointFilename != null) {
+			writeCheckpoint(codeTable, evaluator);
+		}
+		logger.debug(evaluator.getDecidedCount() + " candidates, " + this._nbAccepted + " accepted, " + this._nbPruned + " pruned, " + evaluator.getDiscardedCount() + " evaluations discarded, " + codeTable.size() + " codes: L(D, CT) = " + codeTable.getTotalLength() + (this._finished ? "" : " (stopped)"));
+		return codeTable.toCodeTable();
+	}
+
+	private void writeCheckpoint(IncrementalCodeTable codeTable, CandidateEvaluator evaluator) {
+		new MiningCheckpoint(this.getAlgorithmName(), this._minSupport, this._transactions, codeTable, evaluator.getCursor()).write(this._checkpointFilename);
+		logger.debug("Checkpoint written to " + this._checkpointFilename + " after " + evaluator.getDecidedCount() + " candidates");
+	}
+
+}
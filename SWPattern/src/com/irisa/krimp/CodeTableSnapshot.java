@@ -0,0 +1,191 @@
+package com.irisa.krimp;
+
+import java.util.Arrays;
+
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Frozen copy of a code table, that can be shared without copy by measures running concurrently.
+ * The codes are kept in the order of the code table (standard cover order), their usages and supports in primitive arrays.
+ * Nothing is modified after construction, the state of an evaluation (usages, new codes) is kept by the evaluation itself.
+ * @author pmaillot
+ *
+ */
+public final class CodeTableSnapshot {
+
+	private final KItemset[] _codes;
+	private final int[] _usages;
+	private final int[] _supports;
+	private final long _usageTotal;
+	private final int _maxItem;
+	private final long _version;
+	private volatile double[] _standardItemLengths = null; // L(code_ST({i})) of each item i, built on the first call
+	private volatile CodeTableSnapshot _inCoverOrder = null; // Same codes in standard cover order, built on the first call
+
+	/**
+	 * Copy of the codes of ct, in their current order, with their current usages
+	 * @param ct
+	 */
+	public CodeTableSnapshot(CodeTable ct) {
+		int nbCodes = ct.getCodes().size();
+		this._codes = new KItemset[nbCodes];
+		this._usages = new int[nbCodes];
+		this._supports = new int[nbCodes];
+		int maxItem = -1;
+		int iCode = 0;
+		for(KItemset code : ct.getCodes()) {
+			KItemset copy = new KItemset(code);
+			copy.getSignature(); // Computed now, so that the codes are only read afterwards
+			this._codes[iCode] = copy;
+			this._usages[iCode] = code.getUsage();
+			this._supports[iCode] = code.getSupport();
+			if(! code.isEmpty()) {
+				maxItem = Math.max(maxItem, code.itemAt(code.size() - 1));
+			}
+			iCode++;
+		}
+		this._usageTotal = ct.getUsageTotal();
+		this._maxItem = maxItem;
+		this._version = ct.getVersion();
+	}
+
+	/**
+	 * Codes of snapshot reordered, sharing its itemsets
+	 * @param snapshot
+	 * @param order Index in snapshot of each code
+	 */
+	private CodeTableSnapshot(CodeTableSnapshot snapshot, Integer[] order) {
+		int nbCodes = order.length;
+		this._codes = new KItemset[nbCodes];
+		this._usages = new int[nbCodes];
+		this._supports = new int[nbCodes];
+		for(int iCode = 0; iCode < nbCodes; iCode++) {
+			this._codes[iCode] = snapshot._codes[order[iCode]];
+			this._usages[iCode] = snapshot._usages[order[iCode]];
+			this._supports[iCode] = snapshot._supports[order[iCode]];
+		}
+		this._usageTotal = snapshot._usageTotal;
+		this._maxItem = snapshot._maxItem;
+		this._version = snapshot._version;
+		this._inCoverOrder = this;
+	}
+
+	public int size() {
+		return this._codes.length;
+	}
+
+	/**
+	 * @return The codes in cover order, the array and its itemsets must not be modified
+	 */
+	public KItemset[] getCodes() {
+		return this._codes;
+	}
+
+	public KItemset getCode(int index) {
+		return this._codes[index];
+	}
+
+	/**
+	 * @param index
+	 * @return Usage of the index-th code in the code table when the snapshot was taken
+	 */
+	public int getUsage(int index) {
+		return this._usages[index];
+	}
+
+	/**
+	 * @return copy of the usages of the codes, in cover order
+	 */
+	public int[] getUsages() {
+		return this._usages.clone();
+	}
+
+	public int getSupport(int index) {
+		return this._supports[index];
+	}
+
+	public long getUsageTotal() {
+		return this._usageTotal;
+	}
+
+	/**
+	 * @return Greatest item appearing in the codes, -1 if there is none
+	 */
+	public int getMaxItem() {
+		return this._maxItem;
+	}
+
+	/**
+	 * @return Version of the code table when the snapshot was taken
+	 */
+	public long getVersion() {
+		return this._version;
+	}
+
+	/**
+	 * The covers are defined for codes in standard cover order, which a code table read from a file may not be in.
+	 * @return This snapshot if its codes are in standard cover order, otherwise a snapshot of the same codes stably sorted in this order
+	 */
+	public CodeTableSnapshot inCoverOrder() {
+		CodeTableSnapshot result = this._inCoverOrder;
+		if(result == null) { // Concurrent first calls compute equal snapshots
+			result = this;
+			for(int iCode = 1; iCode < this._codes.length && result == this; iCode++) {
+				if(CodeTable.standardCoverOrderComparator.compare(this._codes[iCode - 1], this._codes[iCode]) > 0) {
+					Integer[] order = new Integer[this._codes.length];
+					for(int i = 0; i < order.length; i++) {
+						order[i] = i;
+					}
+					Arrays.sort(order, (iCode1, iCode2) -> CodeTable.standardCoverOrderComparator.compare(this._codes[iCode1], this._codes[iCode2])); // Stable
+					result = new CodeTableSnapshot(this, order);
+				}
+			}
+			this._inCoverOrder = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Lengths of the items in the standard code table derived from the snapshot, computed on the first call.
+	 * @return L(code_ST({i})) of each item i, by item, infinite for the items of no used code. Must not be modified.
+	 */
+	public double[] getStandardItemLengths() {
+		double[] result = this._standardItemLengths;
+		if(result == null) { // Concurrent first calls compute the same array
+			result = standardItemLengths(this._codes, this._usages);
+			this._standardItemLengths = result;
+		}
+		return result;
+	}
+
+	/**
+	 * The standard code table gives to each item the sum of the usages of the codes containing it.
+	 * @param codes
+	 * @param usages Usage of each code
+	 * @return L(code_ST({i})) of each item i, by item up to the greatest item of the codes, infinite for the items of no used code
+	 */
+	public static double[] standardItemLengths(KItemset[] codes, int[] usages) {
+		int maxItem = -1;
+		for(KItemset code : codes) {
+			if(! code.isEmpty()) {
+				maxItem = Math.max(maxItem, code.itemAt(code.size() - 1));
+			}
+		}
+		long[] standardUsages = new long[maxItem + 1];
+		long standardUsageTotal = 0;
+		for(int iCode = 0; iCode < codes.length; iCode++) {
+			KItemset code = codes[iCode];
+			for(int i = 0; i < code.size(); i++) {
+				standardUsages[code.itemAt(i)] += usages[iCode];
+			}
+			standardUsageTotal += (long) usages[iCode] * code.size();
+		}
+
+		double[] result = new double[maxItem + 1];
+		for(int item = 0; item <= maxItem; item++) {
+			result[item] = - Math.log((double) standardUsages[item] / (double) standardUsageTotal);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,705 @@
+package com.irisa.krimp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.irisa.krimp.data.CompressedBitmap;
+import com.irisa.krimp.data.DataIndexes;
+import com.irisa.krimp.data.ItemsetSet;
+import com.irisa.krimp.data.KItemset;
+import com.irisa.krimp.data.TransactionSet;
+
+/**
+ * Code table being mined, keeping the cover of each transaction so that the addition or the removal of a code is evaluated without covering the whole transaction set again.
+ * Only the transactions containing an added code, or whose cover uses a removed code, can change of cover. Their covers keep the codes placed before the changed one in cover order,
+ * then the code table is scanned from there.
+ *
+ * The codes are kept in standard cover order, a new code being placed after the equal ones. It starts with the singletons of all the items, which are never removed, so every transaction is covered.
+ * The total compressed size L(D, CT) = L(CT|D) + L(D|CT) is maintained from sums over the used codes, using the standard code table of the item supports.
+ * Usages and supports count the multiplicity of the transactions.
+ * @author pmaillot
+ *
+ */
+class IncrementalCodeTable {
+
+	/**
+	 * Code of the code table with its usage and the transactions whose cover uses it
+	 */
+	static class Code {
+		private int _id; // Identifies the code among all the codes ever committed to the code table, -1 before
+		private KItemset _itemset;
+		private int _support;
+		private int _usage = 0;
+		private double _standardLength; // L(code_ST(X))
+		private int _position = -1; // Position in cover order, -1 when not in the code table
+		private BitSet _users = new BitSet(); // Transactions whose cover uses the code
+
+		private Code(int id, KItemset itemset, int support, double standardLength) {
+			this._id = id;
+			this._itemset = itemset;
+			this._support = support;
+			this._standardLength = standardLength;
+		}
+
+		KItemset getItemset() {
+			return this._itemset;
+		}
+
+		int getSupport() {
+			return this._support;
+		}
+
+		int getUsage() {
+			return this._usage;
+		}
+
+		/**
+		 * @return Position in cover order, -1 when not in the code table
+		 */
+		int getPosition() {
+			return this._position;
+		}
+
+		/**
+		 * @return L(code_ST(X))
+		 */
+		double getStandardLength() {
+			return this._standardLength;
+		}
+
+		/**
+		 * @return Transactions whose cover uses the code, must not be modified
+		 */
+		BitSet getUsers() {
+			return this._users;
+		}
+
+		boolean isSingleton() {
+			return this._itemset.size() == 1;
+		}
+
+		public String toString() {
+			return this._itemset.toString() + " s:" + this._support + " u:" + this._usage;
+		}
+	}
+
+	/**
+	 * Number of transactions whose cover uses two codes
+	 */
+	static class CoUsage {
+		private Code _first;
+		private Code _second;
+		private int _count = 0; // Counting the multiplicity of the transactions
+
+		private CoUsage(Code first, Code second) {
+			this._first = first;
+			this._second = second;
+		}
+
+		Code getFirst() {
+			return this._first;
+		}
+
+		Code getSecond() {
+			return this._second;
+		}
+
+		int getCount() {
+			return this._count;
+		}
+	}
+
+	/**
+	 * Effect of the addition or the removal of a code, computed without modifying the code table
+	 */
+	static class Change {
+		private Code _added = null;
+		private Code _removed = null;
+		private int _position; // Position of the added or removed code
+		private int[] _transactions = new int[0]; // Transactions changing of cover
+		private Code[][] _covers = new Code[0][]; // New cover of each of them
+		private int _size = 0;
+		private LinkedHashMap<Code, Integer> _usageDeltas = new LinkedHashMap<Code, Integer>(); // In the order of the covers, for reproducible sums
+		private double _totalLength;
+
+		private void addCover(int iTrans, Code[] cover) {
+			if(this._size == this._transactions.length) {
+				this._transactions = Arrays.copyOf(this._transactions, Math.max(16, this._size * 2));
+				this._covers = Arrays.copyOf(this._covers, this._transactions.length);
+			}
+			this._transactions[this._size] = iTrans;
+			this._covers[this._size] = cover;
+			this._size++;
+		}
+
+		/**
+		 * @return L(D, CT) after the change
+		 */
+		double getTotalLength() {
+			return this._totalLength;
+		}
+
+		/**
+		 * @return Usage of the added code after the change
+		 */
+		int getAddedUsage() {
+			Integer delta = this._usageDeltas.get(this._added);
+			return (delta == null) ? 0 : delta;
+		}
+
+		/**
+		 * @return Codes whose usage decreases with the change, the removed one excepted
+		 */
+		ArrayList<Code> decreasedCodes() {
+			ArrayList<Code> result = new ArrayList<Code>();
+			for(Map.Entry<Code, Integer> delta : this._usageDeltas.entrySet()) {
+				if(delta.getValue() < 0 && delta.getKey() != this._removed) {
+					result.add(delta.getKey());
+				}
+			}
+			return result;
+		}
+	}
+
+	private KItemset[] _transactions;
+	private int[] _multiplicities; // null if all the transactions have a multiplicity of 1
+	private DataIndexes _index;
+	private double[] _standardItemLengths; // L(code_ST({i})) of each item
+
+	private ArrayList<Code> _codes = new ArrayList<Code>(); // In cover order
+	private HashMap<KItemset, Code> _codeMap = new HashMap<KItemset, Code>();
+	private Code[][] _covers; // Cover of each transaction, in cover order
+	private int _nextCodeId = 0;
+	private HashMap<Long, CoUsage> _coUsages = null; // Co-usages of the pairs of codes used together at least once, by pair of ids, null if not tracked
+
+	private long _usageTotal = 0;
+	private int _usedCodes = 0; // Number of codes of non-zero usage
+	private double _codeLengthSum = 0.0; // Sum over the used codes of (usage + 1) * -log(usage) + L(code_ST(X))
+	private double _totalLength = 0.0;
+
+	private int _maxItem = -1;
+	private int _maxTransactionSize = 0;
+	private ThreadLocal<Scanner> _scanners = ThreadLocal.withInitial(Scanner::new); // Buffers of the covers of each thread, the evaluations being read-only
+
+	/**
+	 * Buffers of the cover of a transaction
+	 */
+	private class Scanner {
+		private int _stamp = 0;
+		private int[] _itemStamps = new int[_maxItem + 1];
+		private int[] _signatureBitCounts = new int[64];
+		private long _signature = 0L;
+		private Code[] _coverBuffer = new Code[_maxTransactionSize];
+
+		/**
+		 * Cover of a transaction keeping the codes of its current cover placed before a position, then scanning the code table from this position
+		 * @param iTrans
+		 * @param from Position from which the cover can change
+		 * @param added Code tested just before the one at position from, null if none
+		 * @param removed Code ignored by the scan, null if none
+		 * @return
+		 */
+		private Code[] cover(int iTrans, int from, Code added, Code removed) {
+			KItemset trans = _transactions[iTrans];
+			if(this._stamp == Integer.MAX_VALUE) {
+				Arrays.fill(this._itemStamps, 0);
+				this._stamp = 0;
+			}
+			this._stamp++;
+			Arrays.fill(this._signatureBitCounts, 0);
+			this._signature = 0L;
+			for(int i = 0; i < trans.size(); i++) {
+				int item = trans.itemAt(i);
+				this._itemStamps[item] = this._stamp;
+				this._signatureBitCounts[KItemset.signatureBitIndex(item)]++;
+				this._signature |= KItemset.signatureBit(item);
+			}
+
+			int nbCodes = 0;
+			int remaining = trans.size();
+			if(_covers != null && _covers[iTrans] != null) {
+				for(Code code : _covers[iTrans]) {
+					if(code._position >= from) {
+						break;
+					}
+					this._coverBuffer[nbCodes++] = code;
+					remaining -= code._itemset.size();
+					subtract(code._itemset);
+				}
+			}
+			if(added != null && remaining > 0 && isRemaining(added._itemset)) {
+				this._coverBuffer[nbCodes++] = added;
+				remaining -= added._itemset.size();
+				subtract(added._itemset);
+			}
+			for(int position = from; position < _codes.size() && remaining > 0; position++) {
+				Code code = _codes.get(position);
+				if(code != removed && isRemaining(code._itemset)) {
+					this._coverBuffer[nbCodes++] = code;
+					remaining -= code._itemset.size();
+					subtract(code._itemset);
+				}
+			}
+			return Arrays.copyOf(this._coverBuffer, nbCodes);
+		}
+
+		/**
+		 * @param itemset
+		 * @return true if all the items of itemset are in the part of the transaction not covered yet
+		 */
+		private boolean isRemaining(KItemset itemset) {
+			if((itemset.getSignature() & ~this._signature) != 0L) {
+				return false;
+			}
+			for(int i = 0; i < itemset.size(); i++) {
+				int item = itemset.itemAt(i);
+				if(item >= this._itemStamps.length || this._itemStamps[item] != this._stamp) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void subtract(KItemset itemset) {
+			for(int i = 0; i < itemset.size(); i++) {
+				int item = itemset.itemAt(i);
+				this._itemStamps[item] = 0;
+				int bitIndex = KItemset.signatureBitIndex(item);
+				this._signatureBitCounts[bitIndex]--;
+				if(this._signatureBitCounts[bitIndex] == 0) {
+					this._signature &= ~(1L << bitIndex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Code table of the singletons of the items of the transactions
+	 * @param transactions
+	 * @param index Indexes of these transactions
+	 */
+	IncrementalCodeTable(TransactionSet transactions, DataIndexes index) {
+		this._index = index;
+		this._transactions = new KItemset[transactions.size()];
+		this._multiplicities = new int[transactions.size()];
+		boolean collapsed = false;
+		int maxItem = -1;
+		int maxSize = 0;
+		int iTrans = 0;
+		for(KItemset trans : transactions) {
+			this._transactions[iTrans] = trans;
+			this._multiplicities[iTrans] = trans.getMultiplicity();
+			collapsed |= (trans.getMultiplicity() != 1);
+			if(! trans.isEmpty()) {
+				maxItem = Math.max(maxItem, trans.itemAt(trans.size() - 1));
+			}
+			maxSize = Math.max(maxSize, trans.size());
+			iTrans++;
+		}
+		if(! collapsed) {
+			this._multiplicities = null;
+		}
+		this._maxItem = maxItem;
+		this._maxTransactionSize = maxSize;
+
+		ArrayList<KItemset> singletons = new ArrayList<KItemset>();
+		int[] supports = new int[maxItem + 1];
+		long supportTotal = 0;
+		for(int item = 0; item <= maxItem; item++) {
+			supports[item] = support(index.getItemTransactionBitmap(item));
+			supportTotal += supports[item];
+			if(supports[item] > 0) {
+				singletons.add(new KItemset(new int[] { item }));
+			}
+		}
+		this._standardItemLengths = new double[maxItem + 1];
+		for(int item = 0; item <= maxItem; item++) {
+			this._standardItemLengths[item] = - Math.log((double) supports[item] / (double) supportTotal);
+		}
+		singletons.sort((single1, single2) -> - Integer.compare(supports[single1.itemAt(0)], supports[single2.itemAt(0)])); // Stable, by item for equal supports
+		for(KItemset singleton : singletons) {
+			Code code = new Code(this._nextCodeId++, singleton, supports[singleton.itemAt(0)], standardLength(singleton));
+			code._position = this._codes.size();
+			this._codes.add(code);
+			this._codeMap.put(singleton, code);
+		}
+
+		this._covers = new Code[this._transactions.length][];
+		for(iTrans = 0; iTrans < this._transactions.length; iTrans++) {
+			Code[] cover = cover(iTrans, 0, null, null);
+			this._covers[iTrans] = cover;
+			for(Code code : cover) {
+				code._usage += multiplicity(iTrans);
+				code._users.set(iTrans);
+			}
+		}
+		recomputeTotalLength();
+	}
+
+	private int multiplicity(int iTrans) {
+		return (this._multiplicities == null) ? 1 : this._multiplicities[iTrans];
+	}
+
+	/**
+	 * @param transactions
+	 * @return Number of transactions in the bitmap, counting their multiplicity
+	 */
+	int support(CompressedBitmap transactions) {
+		return this._index.getWeightedSupport(transactions);
+	}
+
+	/**
+	 * @param itemset
+	 * @return Number of transactions containing itemset, counting their multiplicity
+	 */
+	int support(KItemset itemset) {
+		return support(this._index.getCodeTransactionBitmap(itemset));
+	}
+
+	/**
+	 * @param itemset
+	 * @return L(code_ST(X))
+	 */
+	double standardLength(KItemset itemset) {
+		double result = 0.0;
+		for(int i = 0; i < itemset.size(); i++) {
+			int item = itemset.itemAt(i);
+			result += (item < this._standardItemLengths.length) ? this._standardItemLengths[item] : Double.POSITIVE_INFINITY;
+		}
+		return result;
+	}
+
+	int size() {
+		return this._codes.size();
+	}
+
+	/**
+	 * @param position
+	 * @return Code at position in cover order
+	 */
+	Code getCode(int position) {
+		return this._codes.get(position);
+	}
+
+	/**
+	 * @param itemset
+	 * @return The code of the code table equal to itemset, null if there is none
+	 */
+	Code getCode(KItemset itemset) {
+		return this._codeMap.get(itemset);
+	}
+
+	int getTransactionCount() {
+		return this._transactions.length;
+	}
+
+	/**
+	 * @param iTrans
+	 * @return Cover of the iTrans-th transaction in cover order, must not be modified
+	 */
+	Code[] getCover(int iTrans) {
+		return this._covers[iTrans];
+	}
+
+	int getMultiplicity(int iTrans) {
+		return multiplicity(iTrans);
+	}
+
+	long getUsageTotal() {
+		return this._usageTotal;
+	}
+
+	/**
+	 * @return Number of codes of non-zero usage
+	 */
+	int getUsedCodeCount() {
+		return this._usedCodes;
+	}
+
+	/**
+	 * @return L(D, CT)
+	 */
+	double getTotalLength() {
+		return this._totalLength;
+	}
+
+	/**
+	 * @param code
+	 * @return Position of the first code placed after code in standard cover order, by decreasing size then decreasing support
+	 */
+	private int insertionPosition(Code code) {
+		int low = 0;
+		int high = this._codes.size();
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			Code other = this._codes.get(middle);
+			boolean after = other._itemset.size() < code._itemset.size()
+					|| (other._itemset.size() == code._itemset.size() && other._support < code._support);
+			if(after) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Effect of the addition of a new code. Only the transactions containing it are covered again.
+	 * The code table is not modified, several additions can be evaluated at once by different threads.
+	 * @param itemset Itemset of at least two items that is not a code yet
+	 * @param support Support of the itemset
+	 * @return
+	 */
+	Change evaluateAddition(KItemset itemset, int support) {
+		return evaluateAddition(itemset, support, this._index.getCodeTransactionBitmap(itemset));
+	}
+
+	/**
+	 * @param itemset Itemset of at least two items that is not a code yet
+	 * @param support Support of the itemset
+	 * @param transactions Transactions containing the itemset
+	 * @return
+	 */
+	Change evaluateAddition(KItemset itemset, int support, CompressedBitmap transactions) {
+		Change result = new Change();
+		result._added = new Code(-1, itemset, support, standardLength(itemset));
+		result._position = insertionPosition(result._added);
+		for(int iTrans = transactions.nextSetBit(0); iTrans >= 0; iTrans = transactions.nextSetBit(iTrans + 1)) {
+			Code[] cover = cover(iTrans, result._position, result._added, null);
+			if(! Arrays.equals(cover, this._covers[iTrans])) {
+				result.addCover(iTrans, cover);
+			}
+		}
+		evaluate(result);
+		return result;
+	}
+
+	/**
+	 * Effect of the removal of a code. Only the transactions whose cover uses it are covered again.
+	 * @param code Code of the code table that is not a singleton
+	 * @return
+	 */
+	Change evaluateRemoval(Code code) {
+		Change result = new Change();
+		result._removed = code;
+		result._position = code._position;
+		for(int iTrans = code._users.nextSetBit(0); iTrans >= 0; iTrans = code._users.nextSetBit(iTrans + 1)) {
+			result.addCover(iTrans, cover(iTrans, result._position, null, code));
+		}
+		evaluate(result);
+		return result;
+	}
+
+	/**
+	 * Compute the usage deltas and the total length after a change
+	 * @param change
+	 */
+	private void evaluate(Change change) {
+		for(int i = 0; i < change._size; i++) {
+			int iTrans = change._transactions[i];
+			int multiplicity = multiplicity(iTrans);
+			for(Code code : this._covers[iTrans]) {
+				change._usageDeltas.merge(code, - multiplicity, Integer::sum);
+			}
+			for(Code code : change._covers[i]) {
+				change._usageDeltas.merge(code, multiplicity, Integer::sum);
+			}
+		}
+
+		long usageTotal = this._usageTotal;
+		double codeLengths = 0.0; // Change of the sum over the used codes of (usage + 1) * -log(usage) + L(code_ST(X))
+		int usedCodes = 0; // Change of the number of used codes
+		for(Map.Entry<Code, Integer> delta : change._usageDeltas.entrySet()) {
+			Code code = delta.getKey();
+			int usage = code._usage + delta.getValue();
+			usageTotal += delta.getValue();
+			codeLengths -= codeLengthSum(code, code._usage);
+			codeLengths += codeLengthSum(code, usage);
+			usedCodes += ((usage > 0) ? 1 : 0) - ((code._usage > 0) ? 1 : 0);
+		}
+		change._totalLength = totalLength(usageTotal, this._usedCodes + usedCodes, this._codeLengthSum + codeLengths);
+	}
+
+	/**
+	 * @param code
+	 * @param usage
+	 * @return Contribution of a code of this usage to _codeLengthSum
+	 */
+	private static double codeLengthSum(Code code, int usage) {
+		if(usage == 0) {
+			return 0.0;
+		}
+		return - (usage + 1) * Math.log(usage) + code._standardLength;
+	}
+
+	/**
+	 * L(D|CT) + L(CT|D) = sum over the used codes X of usage(X) * L(code_CT(X)) + L(code_CT(X)) + L(code_ST(X)), with L(code_CT(X)) = log(usageTotal) - log(usage(X))
+	 * @param usageTotal
+	 * @param usedCodes
+	 * @param codeLengthSum
+	 * @return
+	 */
+	private static double totalLength(long usageTotal, int usedCodes, double codeLengthSum) {
+		if(usageTotal == 0) {
+			return 0.0;
+		}
+		return (usageTotal + usedCodes) * Math.log(usageTotal) + codeLengthSum;
+	}
+
+	private void recomputeTotalLength() {
+		this._usageTotal = 0;
+		this._usedCodes = 0;
+		this._codeLengthSum = 0.0;
+		for(Code code : this._codes) {
+			this._usageTotal += code._usage;
+			if(code._usage > 0) {
+				this._usedCodes++;
+				this._codeLengthSum += codeLengthSum(code, code._usage);
+			}
+		}
+		this._totalLength = totalLength(this._usageTotal, this._usedCodes, this._codeLengthSum);
+	}
+
+	/**
+	 * Apply a change to the code table
+	 * @param change Change evaluated on the current state of the code table
+	 */
+	void commit(Change change) {
+		if(change._added != null) {
+			change._added._id = this._nextCodeId++;
+			this._codes.add(change._position, change._added);
+			this._codeMap.put(change._added._itemset, change._added);
+		} else {
+			this._codes.remove(change._position);
+			this._codeMap.remove(change._removed._itemset);
+			change._removed._position = -1;
+		}
+		for(int position = change._position; position < this._codes.size(); position++) {
+			this._codes.get(position)._position = position;
+		}
+
+		for(int i = 0; i < change._size; i++) {
+			int iTrans = change._transactions[i];
+			if(this._coUsages != null) {
+				addCoUsages(this._covers[iTrans], - multiplicity(iTrans));
+				addCoUsages(change._covers[i], multiplicity(iTrans));
+			}
+			for(Code code : this._covers[iTrans]) {
+				code._users.clear(iTrans);
+			}
+			for(Code code : change._covers[i]) {
+				code._users.set(iTrans);
+			}
+			this._covers[iTrans] = change._covers[i];
+		}
+		for(Map.Entry<Code, Integer> delta : change._usageDeltas.entrySet()) {
+			delta.getKey()._usage += delta.getValue();
+		}
+		recomputeTotalLength();
+	}
+
+	/**
+	 * Post-acceptance pruning: the codes whose usage decreased are tested by increasing usage, and removed if it decreases L(D, CT).
+	 * The codes whose usage decreases with a removal are tested in turn. Singletons are never removed.
+	 * @param decreasedCodes Codes whose usage decreased with the last change
+	 * @return Number of codes removed
+	 */
+	int prune(ArrayList<Code> decreasedCodes) {
+		int result = 0;
+		ArrayList<Code> pruneSet = new ArrayList<Code>();
+		addPruneCandidates(pruneSet, decreasedCodes);
+		while(! pruneSet.isEmpty()) {
+			Code pruneCandidate = pruneSet.get(0);
+			for(Code code : pruneSet) {
+				if(code._usage < pruneCandidate._usage) {
+					pruneCandidate = code;
+				}
+			}
+			pruneSet.remove(pruneCandidate);
+			Change change = evaluateRemoval(pruneCandidate);
+			if(pruneCandidate._usage == 0 || change.getTotalLength() < this._totalLength) {
+				commit(change);
+				result++;
+				addPruneCandidates(pruneSet, change.decreasedCodes());
+			}
+		}
+		return result;
+	}
+
+	private static void addPruneCandidates(ArrayList<Code> pruneSet, ArrayList<Code> codes) {
+		for(Code code : codes) {
+			if(! code.isSingleton() && code._position >= 0 && ! pruneSet.contains(code)) {
+				pruneSet.add(code);
+			}
+		}
+	}
+
+	/**
+	 * Start to maintain the co-usages of the pairs of codes in the covers
+	 */
+	void trackCoUsages() {
+		if(this._coUsages == null) {
+			this._coUsages = new HashMap<Long, CoUsage>();
+			for(int iTrans = 0; iTrans < this._covers.length; iTrans++) {
+				addCoUsages(this._covers[iTrans], multiplicity(iTrans));
+			}
+		}
+	}
+
+	/**
+	 * @return The pairs of codes used together in at least one cover, must not be modified. Only available after trackCoUsages().
+	 */
+	Iterable<CoUsage> getCoUsages() {
+		return this._coUsages.values();
+	}
+
+	/**
+	 * @param cover
+	 * @param count Added to the co-usage of each pair of codes of the cover
+	 */
+	private void addCoUsages(Code[] cover, int count) {
+		for(int i = 0; i < cover.length; i++) {
+			for(int j = i + 1; j < cover.length; j++) {
+				Code first = (cover[i]._id < cover[j]._id) ? cover[i] : cover[j];
+				Code second = (first == cover[i]) ? cover[j] : cover[i];
+				Long key = ((long) first._id << 32) | second._id;
+				CoUsage coUsage = this._coUsages.get(key);
+				if(coUsage == null) {
+					coUsage = new CoUsage(first, second);
+					this._coUsages.put(key, coUsage);
+				}
+				coUsage._count += count;
+				if(coUsage._count == 0) {
+					this._coUsages.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cover of a transaction, see Scanner.cover()
+	 */
+	private Code[] cover(int iTrans, int from, Code added, Code removed) {
+		return this._scanners.get().cover(iTrans, from, added, removed);
+	}
+
+	/**
+	 * @return A code table of copies of the codes in cover order, with their usages and supports
+	 */
+	CodeTable toCodeTable() {
+		ItemsetSet codes = new ItemsetSet();
+		for(Code code : this._codes) {
+			KItemset copy = new KItemset(code._itemset);
+			copy.setSupport(code._support);
+			copy.setUsage(code._usage);
+			codes.add(copy);
+		}
+		return new CodeTable(codes);
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.irisa.krimp;
+
+import com.irisa.krimp.data.DataIndexes;
+import com.irisa.krimp.data.KItemset;
+import com.irisa.krimp.data.TransactionSet;
+
+/**
+ * KRIMP code table miner (Vreeken et al., Krimp: mining itemsets that compress, 2011), running on the transactions in memory.
+ * Starting from the singletons of the items, each candidate is added in cover order if it decreases L(D, CT), then the codes whose usage decreased are pruned if their removal decreases L(D, CT).
+ * The candidates are the closed frequent itemsets of the transactions, in standard candidate order, streamed by ClosedItemsetMiner.
+ *
+ * Candidates are evaluated by covering again only the transactions containing them, see IncrementalCodeTable.
+ * They can be evaluated speculatively in parallel by windows of candidates, the code table mined being the same as in sequence, see CandidateEvaluator.
+ * A checkpoint saves the number of candidates of the stream already passed, a resumed mining skips them.
+ * The code tables mined can be used directly by CodificationMeasure, with the usages of their codes in the transactions.
+ * @author pmaillot
+ *
+ */
+public class KrimpMiner extends CodeTableMiner {
+
+	public static final String ALGORITHM_NAME = "KRIMP";
+
+	/**
+	 * @param transactions Transactions to be compressed, identical transactions can be collapsed
+	 */
+	public KrimpMiner(TransactionSet transactions) {
+		this(transactions, new DataIndexes(transactions));
+	}
+
+	/**
+	 * @param transactions
+	 * @param index Indexes of the transactions, shared with the measures of the same transactions
+	 */
+	public KrimpMiner(TransactionSet transactions, DataIndexes index) {
+		super(transactions, index);
+	}
+
+	@Override
+	protected String getAlgorithmName() {
+		return ALGORITHM_NAME;
+	}
+
+	/**
+	 * @param minSupport Minimal support of the candidates, counting the multiplicity of the transactions
+	 * @return The code table mined from the closed itemsets of support at least minSupport, in standard cover order
+	 */
+	public CodeTable mine(int minSupport) {
+		return mine(new ClosedItemsetMiner(this._index, minSupport), Math.max(1, minSupport));
+	}
+
+	/**
+	 * @param candidates Candidate itemsets in standard candidate order with their support, computed if 0. Singletons and itemsets already in the code table are ignored.
+	 * @return The code table mined from the candidates, in standard cover order
+	 */
+	public CodeTable mine(Iterable<KItemset> candidates) {
+		return mine(candidates, 0);
+	}
+
+	/**
+	 * @param candidates
+	 * @param minSupport Minimal support of the candidates, 0 if they are given, identifying the checkpoints
+	 * @return
+	 */
+	private CodeTable mine(Iterable<KItemset> candidates, int minSupport) {
+		IncrementalCodeTable codeTable = startMining(minSupport);
+		CandidateEvaluator evaluator = newEvaluator(codeTable);
+		evaluator.setCandidates(candidates.iterator());
+		evaluator.skip(getResumedCursor());
+
+		IncrementalCodeTable.Change change = nextAccepted(codeTable, evaluator);
+		while(change != null) {
+			accept(codeTable, change);
+			change = nextAccepted(codeTable, evaluator);
+		}
+		return finishMining(codeTable, evaluator);
+	}
+
+}
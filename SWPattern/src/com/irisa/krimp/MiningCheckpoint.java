@@ -0,0 +1,205 @@
+package com.irisa.krimp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.irisa.exception.LogicException;
+import com.irisa.krimp.IncrementalCodeTable.Code;
+import com.irisa.krimp.data.KItemset;
+import com.irisa.krimp.data.TransactionSet;
+
+/**
+ * State of a code table mining, saved in a binary file to resume it in a later run: the codes of at least two items of the code table in cover order with their support and usage, and the number of candidates of the stream already passed.
+ * The singletons and the covers are not saved, they are computed again from the transactions, identified by a fingerprint.
+ *
+ * The file is written next to the transactions, see CodeTableMiner.checkpointFilename(), through a temporary file so that a run killed while writing leaves the previous checkpoint.
+ * @author pmaillot
+ *
+ */
+class MiningCheckpoint {
+
+	private static Logger logger = Logger.getLogger(MiningCheckpoint.class);
+
+	private static final int MAGIC = 0x4B435450; // "KCTP"
+	private static final int VERSION = 1;
+
+	private String _algorithm;
+	private int _minSupport; // Minimal support of the candidates mined, 0 if given
+	private long _transactionCount; // Counting the multiplicity of the transactions
+	private long _fingerprint;
+	private long _cursor;
+	private ArrayList<KItemset> _codes = new ArrayList<KItemset>(); // With their support and usage, in cover order
+
+	private MiningCheckpoint() {
+	}
+
+	/**
+	 * @param algorithm Name of the algorithm mining the code table
+	 * @param minSupport Minimal support of the candidates mined, 0 if given
+	 * @param transactions
+	 * @param codeTable
+	 * @param cursor Number of candidates already passed
+	 */
+	MiningCheckpoint(String algorithm, int minSupport, TransactionSet transactions, IncrementalCodeTable codeTable, long cursor) {
+		this._algorithm = algorithm;
+		this._minSupport = minSupport;
+		this._transactionCount = transactionCount(transactions);
+		this._fingerprint = fingerprint(transactions);
+		this._cursor = cursor;
+		for(int position = 0; position < codeTable.size(); position++) {
+			Code code = codeTable.getCode(position);
+			if(! code.isSingleton()) {
+				this._codes.add(new KItemset(code.getItemset().getItemArray(), code.getSupport(), code.getUsage()));
+			}
+		}
+	}
+
+	long getCursor() {
+		return this._cursor;
+	}
+
+	int getCodeCount() {
+		return this._codes.size();
+	}
+
+	/**
+	 * @param algorithm
+	 * @param minSupport
+	 * @param transactions
+	 * @return true if the checkpoint comes from the same mining of the same transactions, identical transactions being collapsed or not
+	 */
+	boolean matches(String algorithm, int minSupport, TransactionSet transactions) {
+		return this._algorithm.equals(algorithm)
+				&& this._minSupport == minSupport
+				&& this._transactionCount == transactionCount(transactions)
+				&& this._fingerprint == fingerprint(transactions);
+	}
+
+	/**
+	 * Add the codes of the checkpoint to a code table of singletons, in cover order, checking their usages
+	 * @param codeTable Code table of the singletons of the transactions of the checkpoint
+	 */
+	void restore(IncrementalCodeTable codeTable) {
+		for(KItemset code : this._codes) {
+			codeTable.commit(codeTable.evaluateAddition(new KItemset(code.getItemArray()), code.getSupport()));
+		}
+		int iCode = 0;
+		for(int position = 0; position < codeTable.size(); position++) {
+			Code code = codeTable.getCode(position);
+			if(! code.isSingleton()) {
+				KItemset saved = this._codes.get(iCode++);
+				if(! code.getItemset().equals(saved) || code.getUsage() != saved.getUsage()) {
+					throw new LogicException("Checkpoint code " + saved + " of usage " + saved.getUsage() + " restored as " + code);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param filename
+	 */
+	void write(String filename) {
+		File file = new File(filename);
+		File tempFile = new File(filename + ".tmp");
+		try {
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(this._algorithm);
+				out.writeInt(this._minSupport);
+				out.writeLong(this._transactionCount);
+				out.writeLong(this._fingerprint);
+				out.writeLong(this._cursor);
+				out.writeInt(this._codes.size());
+				for(KItemset code : this._codes) {
+					out.writeInt(code.size());
+					for(int i = 0; i < code.size(); i++) {
+						out.writeInt(code.itemAt(i));
+					}
+					out.writeInt(code.getSupport());
+					out.writeInt(code.getUsage());
+				}
+			}
+			try {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			logger.error(e);
+			tempFile.delete(); // The previous checkpoint, if any, is left
+		}
+	}
+
+	/**
+	 * @param filename File written by write()
+	 * @return The checkpoint, null if it cannot be read
+	 */
+	static MiningCheckpoint read(String filename) {
+		MiningCheckpoint result = new MiningCheckpoint();
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new LogicException("File " + filename + " is not a code table mining checkpoint");
+			}
+			result._algorithm = in.readUTF();
+			result._minSupport = in.readInt();
+			result._transactionCount = in.readLong();
+			result._fingerprint = in.readLong();
+			result._cursor = in.readLong();
+			int nbCodes = in.readInt();
+			for(int iCode = 0; iCode < nbCodes; iCode++) {
+				int[] items = new int[in.readInt()];
+				for(int i = 0; i < items.length; i++) {
+					items[i] = in.readInt();
+				}
+				int support = in.readInt();
+				int usage = in.readInt();
+				result._codes.add(new KItemset(items, support, usage));
+			}
+		} catch (IOException e) {
+			logger.error(e);
+			return null;
+		}
+		return result;
+	}
+
+	private static long transactionCount(TransactionSet transactions) {
+		long result = 0;
+		for(KItemset trans : transactions) {
+			result += trans.getMultiplicity();
+		}
+		return result;
+	}
+
+	/**
+	 * @param transactions
+	 * @return Hash of the transactions, independent of their order and of the collapse of identical ones
+	 */
+	private static long fingerprint(TransactionSet transactions) {
+		long result = 0L;
+		for(KItemset trans : transactions) {
+			long hash = 1L;
+			for(int i = 0; i < trans.size(); i++) {
+				hash = hash * 1000003L + trans.itemAt(i);
+			}
+			hash ^= hash >>> 31;
+			hash *= 0xBF58476D1CE4E5B9L;
+			hash ^= hash >>> 29;
+			result += trans.getMultiplicity() * hash;
+		}
+		return result;
+	}
+
+}
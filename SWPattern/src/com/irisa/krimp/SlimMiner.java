@@ -0,0 +1,193 @@
+package com.irisa.krimp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import com.irisa.krimp.IncrementalCodeTable.Code;
+import com.irisa.krimp.IncrementalCodeTable.CoUsage;
+import com.irisa.krimp.data.DataIndexes;
+import com.irisa.krimp.data.KItemset;
+import com.irisa.krimp.data.TransactionSet;
+
+/**
+ * SLIM code table miner (Smets and Vreeken, Slim: directly mining descriptive patterns, 2012), running on the transactions in memory.
+ * The candidates are not mined beforehand: they are the unions of two codes used together in some covers, ranked by the gain in L(D, CT) estimated from the usages of both codes and their co-usage.
+ * The candidates of positive estimated gain are evaluated exactly in this order until one decreases L(D, CT), it is then accepted and the code table pruned as by KRIMP.
+ * The mining stops when no candidate decreases L(D, CT).
+ *
+ * The co-usages are maintained with the covers by IncrementalCodeTable, only the transactions whose cover changes are visited.
+ * The candidates can be evaluated speculatively in parallel as by KrimpMiner, the code table mined being the same as in sequence.
+ * A resumed mining generates again the candidates from the codes of the checkpoint, in the same order, and skips the ones already passed.
+ * The code tables mined can be used directly by CodificationMeasure, with the usages of their codes in the transactions.
+ * @author pmaillot
+ *
+ */
+public class SlimMiner extends CodeTableMiner {
+
+	public static final String ALGORITHM_NAME = "SLIM";
+
+	/**
+	 * Candidate of SLIM, union of two codes
+	 */
+	private static class Candidate {
+		private Code _first; // Placed before _second in cover order
+		private Code _second;
+		private double _estimatedGain;
+
+		private Candidate(CoUsage pair) {
+			boolean ordered = pair.getFirst().getPosition() < pair.getSecond().getPosition();
+			this._first = ordered ? pair.getFirst() : pair.getSecond();
+			this._second = ordered ? pair.getSecond() : pair.getFirst();
+		}
+	}
+
+	/**
+	 * Decreasing estimated gain, then cover order of the codes: the order of the candidates only depends on the code table, and not on the ids of its codes, so that a mining resumed from a checkpoint gets the same candidates
+	 */
+	private static Comparator<Candidate> candidateComparator = new Comparator<Candidate>() {
+		@Override
+		public int compare(Candidate candidate1, Candidate candidate2) {
+			int result = - Double.compare(candidate1._estimatedGain, candidate2._estimatedGain);
+			if(result == 0) {
+				result = Integer.compare(candidate1._first.getPosition(), candidate2._first.getPosition());
+			}
+			if(result == 0) {
+				result = Integer.compare(candidate1._second.getPosition(), candidate2._second.getPosition());
+			}
+			return result;
+		}
+	};
+
+	/**
+	 * @param transactions Transactions to be compressed, identical transactions can be collapsed
+	 */
+	public SlimMiner(TransactionSet transactions) {
+		this(transactions, new DataIndexes(transactions));
+	}
+
+	/**
+	 * @param transactions
+	 * @param index Indexes of the transactions, shared with the measures of the same transactions
+	 */
+	public SlimMiner(TransactionSet transactions, DataIndexes index) {
+		super(transactions, index);
+	}
+
+	@Override
+	protected String getAlgorithmName() {
+		return ALGORITHM_NAME;
+	}
+
+	/**
+	 * @return The code table mined from the transactions, in standard cover order
+	 */
+	public CodeTable mine() {
+		IncrementalCodeTable codeTable = startMining(0);
+		codeTable.trackCoUsages();
+		CandidateEvaluator evaluator = newEvaluator(codeTable);
+
+		IncrementalCodeTable.Change change = null;
+		long resumedCursor = getResumedCursor();
+		do {
+			// The candidates change with the co-usages, they are generated again after each accepted one
+			evaluator.setCandidates(unions(candidates(codeTable)));
+			evaluator.skip(resumedCursor);
+			resumedCursor = 0;
+			change = nextAccepted(codeTable, evaluator);
+			if(change != null) {
+				accept(codeTable, change);
+			}
+		} while(change != null);
+		return finishMining(codeTable, evaluator);
+	}
+
+	/**
+	 * @param codeTable
+	 * @return The unions of codes used together of positive estimated gain, by decreasing estimated gain
+	 */
+	private static ArrayList<Candidate> candidates(IncrementalCodeTable codeTable) {
+		ArrayList<Candidate> result = new ArrayList<Candidate>();
+		for(CoUsage pair : codeTable.getCoUsages()) {
+			Candidate candidate = new Candidate(pair);
+			candidate._estimatedGain = estimatedGain(codeTable, candidate._first, candidate._second, pair.getCount());
+			if(candidate._estimatedGain > 0.0) {
+				result.add(candidate);
+			}
+		}
+		result.sort(candidateComparator);
+		return result;
+	}
+
+	/**
+	 * @param candidates
+	 * @return Iterator over the unions of the codes of the candidates, their support to be computed
+	 */
+	private static Iterator<KItemset> unions(ArrayList<Candidate> candidates) {
+		Iterator<Candidate> itCandidates = candidates.iterator();
+		return new Iterator<KItemset>() {
+			@Override
+			public boolean hasNext() {
+				return itCandidates.hasNext();
+			}
+
+			@Override
+			public KItemset next() {
+				Candidate candidate = itCandidates.next();
+				KItemset result = new KItemset(candidate._first.getItemset());
+				result.addAll(candidate._second.getItemset());
+				result.setSupport(0);
+				result.setUsage(0);
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Decrease of L(D, CT) if the union XY of the codes X and Y were used in all the covers using both X and Y, and the usages of the other codes did not change
+	 * @param codeTable
+	 * @param first
+	 * @param second
+	 * @param coUsage Number of covers using both codes
+	 * @return
+	 */
+	private static double estimatedGain(IncrementalCodeTable codeTable, Code first, Code second, int coUsage) {
+		long usageTotal = codeTable.getUsageTotal();
+		long newUsageTotal = usageTotal - coUsage;
+		int firstUsage = first.getUsage();
+		int secondUsage = second.getUsage();
+		int newFirstUsage = firstUsage - coUsage;
+		int newSecondUsage = secondUsage - coUsage;
+
+		// L(D|CT) = usageTotal * log(usageTotal) - sum of usage * log(usage)
+		double result = nLogN(usageTotal) - nLogN(newUsageTotal)
+				- nLogN(firstUsage) + nLogN(newFirstUsage)
+				- nLogN(secondUsage) + nLogN(newSecondUsage)
+				+ nLogN(coUsage);
+
+		// L(CT|D): the code length of the other used codes decreases with the usage total
+		result += (codeTable.getUsedCodeCount() - 2) * (Math.log(usageTotal) - Math.log(newUsageTotal));
+		result += codeTableLength(usageTotal, firstUsage, first) - codeTableLength(newUsageTotal, newFirstUsage, first);
+		result += codeTableLength(usageTotal, secondUsage, second) - codeTableLength(newUsageTotal, newSecondUsage, second);
+		result -= Math.log(newUsageTotal) - Math.log(coUsage) + first.getStandardLength() + second.getStandardLength();
+		return result;
+	}
+
+	/**
+	 * @param usageTotal
+	 * @param usage
+	 * @param code
+	 * @return Length of the code in L(CT|D) with this usage, 0 if unused
+	 */
+	private static double codeTableLength(long usageTotal, int usage, Code code) {
+		if(usage == 0) {
+			return 0.0;
+		}
+		return Math.log(usageTotal) - Math.log(usage) + code.getStandardLength();
+	}
+
+	private static double nLogN(long n) {
+		return (n == 0) ? 0.0 : n * Math.log(n);
+	}
+
+}
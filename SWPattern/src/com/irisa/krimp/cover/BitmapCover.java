@@ -0,0 +1,63 @@
+package com.irisa.krimp.cover;
+
+import com.irisa.krimp.data.BitmapItemset;
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Cover of transactions using the word-packed bitmaps of the codes.
+ * Intended for dense item universes, gives the same covers as the linear scan of the code table.
+ * 
+ * Uses an internal buffer, an instance must not be shared between threads.
+ * @author pmaillot
+ *
+ */
+public class BitmapCover implements CoverEngine {
+
+	private BitmapItemset[] _codeBitmaps;
+	private BitmapItemset _remaining; // Part of the transaction not covered yet
+
+	/**
+	 * @param codes Codes of the code table, in cover order
+	 */
+	public BitmapCover(KItemset[] codes) {
+		int universeSize = 1;
+		this._codeBitmaps = new BitmapItemset[codes.length];
+		for(int iCode = 0; iCode < codes.length; iCode++) {
+			this._codeBitmaps[iCode] = new BitmapItemset(codes[iCode]);
+			if(! codes[iCode].isEmpty()) {
+				universeSize = Math.max(universeSize, codes[iCode].itemAt(codes[iCode].size() - 1) + 1);
+			}
+		}
+		this._remaining = new BitmapItemset(universeSize);
+	}
+
+	@Override
+	public int codeCount() {
+		return this._codeBitmaps.length;
+	}
+
+	/**
+	 * @param trans Transaction to be covered
+	 * @param codeBuffer Receives the positions of the codes of the cover, in cover order. Must be as long as the array of codes.
+	 * @param uncovered Receives the items of the transaction not covered by any code
+	 * @return Number of codes of the cover
+	 */
+	@Override
+	public int cover(KItemset trans, int[] codeBuffer, KItemset uncovered) {
+		this._remaining.setItems(trans);
+		int nbCodes = 0;
+		for(int iCode = 0; iCode < this._codeBitmaps.length && ! this._remaining.isEmpty(); iCode++) { // Searching for the cover
+			if (this._codeBitmaps[iCode].isSubsetOf(this._remaining)) {
+				codeBuffer[nbCodes++] = iCode;
+				this._remaining.andNot(this._codeBitmaps[iCode]);
+			}
+		}
+
+		uncovered.clear();
+		for(int item = this._remaining.nextSetBit(0); item >= 0; item = this._remaining.nextSetBit(item + 1)) {
+			uncovered.add(item);
+		}
+		return nbCodes;
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.irisa.krimp.cover;
+
+import java.util.Arrays;
+
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Final step of the covers that first find the codes contained in the whole transaction:
+ * visiting those candidates in cover order, a candidate is part of the cover if none of its items is already covered.
+ * This is the same choice as the linear scan, which keeps a code if it is contained in the part of the transaction left uncovered.
+ * 
+ * Uses internal buffers, an instance must not be shared between threads.
+ * @author pmaillot
+ *
+ */
+class CandidateSelection {
+
+	private int _stamp = 0; // Identifies the transaction being covered in _coveredItemStamps, to avoid clearing it
+	private int[] _coveredItemStamps; // _coveredItemStamps[item] == _stamp if the item is already covered
+
+	/**
+	 * @param universeSize Greatest item of the codes plus one
+	 */
+	CandidateSelection(int universeSize) {
+		this._coveredItemStamps = new int[universeSize];
+	}
+
+	/**
+	 * @param codes Codes of the code table, in cover order
+	 * @param candidates Positions of the codes contained in trans, in any order. Only the nbCandidates first cells are read, they are sorted in place.
+	 * @param nbCandidates
+	 * @param trans Transaction to be covered
+	 * @param codeBuffer Receives the positions of the codes of the cover, in cover order
+	 * @param uncovered Receives the items of the transaction not covered by any code
+	 * @return Number of codes of the cover
+	 */
+	int select(KItemset[] codes, int[] candidates, int nbCandidates, KItemset trans, int[] codeBuffer, KItemset uncovered) {
+		if(this._stamp == Integer.MAX_VALUE) {
+			Arrays.fill(this._coveredItemStamps, 0);
+			this._stamp = 0;
+		}
+		this._stamp++;
+
+		Arrays.sort(candidates, 0, nbCandidates);
+		int nbCodes = 0;
+		int remaining = trans.size();
+		for(int iCandidate = 0; iCandidate < nbCandidates && remaining > 0; iCandidate++) {
+			KItemset code = codes[candidates[iCandidate]];
+			boolean free = true;
+			for(int i = 0; i < code.size() && free; i++) {
+				free = this._coveredItemStamps[code.itemAt(i)] != this._stamp;
+			}
+			if(free) {
+				for(int i = 0; i < code.size(); i++) {
+					this._coveredItemStamps[code.itemAt(i)] = this._stamp;
+				}
+				remaining -= code.size();
+				codeBuffer[nbCodes++] = candidates[iCandidate];
+			}
+		}
+
+		uncovered.clear();
+		if(remaining > 0) {
+			for(int i = 0; i < trans.size(); i++) {
+				int item = trans.itemAt(i);
+				if(item >= this._coveredItemStamps.length || this._coveredItemStamps[item] != this._stamp) {
+					uncovered.add(item);
+				}
+			}
+		}
+		return nbCodes;
+	}
+
+}
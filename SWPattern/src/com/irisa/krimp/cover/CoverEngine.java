@@ -0,0 +1,55 @@
+package com.irisa.krimp.cover;
+
+import java.util.Map;
+
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Algorithm computing the KRIMP cover of transactions by the codes of a code table, given in cover order at construction.
+ * A transaction is covered by the first code of the code table contained in it, then by the first following code contained in the rest of the transaction, and so on.
+ * All the engines give the same covers as the reference NaiveCover, they only differ by their speed.
+ *
+ * The engines use internal buffers, an instance must not be shared between threads.
+ * @author pmaillot
+ *
+ */
+public interface CoverEngine {
+
+	/**
+	 * @return Number of codes of the code table
+	 */
+	public int codeCount();
+
+	/**
+	 * @param trans Transaction to be covered
+	 * @param codeBuffer Receives the positions of the codes of the cover, in cover order. Must be as long as the array of codes.
+	 * @param uncovered Receives the items of the transaction not covered by any code
+	 * @return Number of codes of the cover
+	 */
+	public int cover(KItemset trans, int[] codeBuffer, KItemset uncovered);
+
+	/**
+	 * Cover of a batch of transactions
+	 * @param transactions
+	 * @param uncoveredCounts If not null, receives the occurrences of the items not covered by any code, weighted by the multiplicity of the transactions. Items are added in the order of their first appearance.
+	 * @return Occurrences of each code in the covers, by position in cover order, weighted by the multiplicity of the transactions
+	 */
+	public default int[] coverUsages(Iterable<KItemset> transactions, Map<Integer, Integer> uncoveredCounts) {
+		int[] result = new int[codeCount()];
+		int[] codeBuffer = new int[codeCount()];
+		KItemset uncovered = new KItemset();
+		for(KItemset trans : transactions) {
+			int nbCodes = cover(trans, codeBuffer, uncovered);
+			for(int i = 0; i < nbCodes; i++) {
+				result[codeBuffer[i]] += trans.getMultiplicity();
+			}
+			if(uncoveredCounts != null) {
+				for(int i = 0; i < uncovered.size(); i++) {
+					uncoveredCounts.merge(uncovered.itemAt(i), trans.getMultiplicity(), Integer::sum);
+				}
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.irisa.krimp.cover;
+
+import java.util.Arrays;
+
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Cover of transactions using an inverted index giving, for each item, the positions in cover order of the codes containing it.
+ * Merging the posting lists of the items of a transaction gives the codes whose items are all present in it, 
+ * only those codes are then visited in cover order, instead of the whole code table.
+ * Gives the same covers as the linear scan of the code table.
+ * 
+ * Uses internal buffers, an instance must not be shared between threads.
+ * @author pmaillot
+ *
+ */
+public class InvertedIndexCover implements CoverEngine {
+
+	private KItemset[] _codes;
+	private int[][] _postings; // _postings[item] = positions of the codes containing item, in cover order
+	private int[] _emptyCodes; // Positions of the empty codes, contained in every transaction
+
+	private int _stamp = 0; // Identifies the transaction being covered in _codeStamps, to avoid clearing it
+	private int[] _codeStamps; // _codeStamps[code] == _stamp if _codeCounts[code] is up to date 
+	private int[] _codeCounts; // number of items of the code present in the transaction
+	private int[] _candidates;
+	private CandidateSelection _selection;
+
+	/**
+	 * @param codes Codes of the code table, in cover order
+	 */
+	public InvertedIndexCover(KItemset[] codes) {
+		this._codes = codes;
+
+		int maxItem = -1;
+		int nbEmptyCodes = 0;
+		for(KItemset code : codes) {
+			if(code.isEmpty()) {
+				nbEmptyCodes++;
+			} else {
+				maxItem = Math.max(maxItem, code.itemAt(code.size() - 1));
+			}
+		}
+
+		int[] postingSizes = new int[maxItem + 1];
+		for(KItemset code : codes) {
+			for(int i = 0; i < code.size(); i++) {
+				postingSizes[code.itemAt(i)]++;
+			}
+		}
+		this._postings = new int[maxItem + 1][];
+		for(int item = 0; item <= maxItem; item++) {
+			this._postings[item] = new int[postingSizes[item]];
+		}
+		Arrays.fill(postingSizes, 0);
+		this._emptyCodes = new int[nbEmptyCodes];
+		nbEmptyCodes = 0;
+		for(int iCode = 0; iCode < codes.length; iCode++) {
+			KItemset code = codes[iCode];
+			if(code.isEmpty()) {
+				this._emptyCodes[nbEmptyCodes++] = iCode;
+			}
+			for(int i = 0; i < code.size(); i++) {
+				int item = code.itemAt(i);
+				this._postings[item][postingSizes[item]++] = iCode;
+			}
+		}
+
+		this._codeStamps = new int[codes.length];
+		this._codeCounts = new int[codes.length];
+		this._candidates = new int[codes.length];
+		this._selection = new CandidateSelection(maxItem + 1);
+	}
+
+	private void nextStamp() {
+		if(this._stamp == Integer.MAX_VALUE) {
+			Arrays.fill(this._codeStamps, 0);
+			this._stamp = 0;
+		}
+		this._stamp++;
+	}
+
+	@Override
+	public int codeCount() {
+		return this._codes.length;
+	}
+
+	/**
+	 * @param trans Transaction to be covered
+	 * @param codeBuffer Receives the positions of the codes of the cover, in cover order. Must be as long as the array of codes.
+	 * @param uncovered Receives the items of the transaction not covered by any code
+	 * @return Number of codes of the cover
+	 */
+	@Override
+	public int cover(KItemset trans, int[] codeBuffer, KItemset uncovered) {
+		nextStamp();
+
+		// Codes whose items are all in the transaction
+		int nbCandidates = 0;
+		for(int iCode : this._emptyCodes) {
+			this._candidates[nbCandidates++] = iCode;
+		}
+		for(int i = 0; i < trans.size(); i++) {
+			int item = trans.itemAt(i);
+			if(item < this._postings.length) {
+				for(int iCode : this._postings[item]) {
+					if(this._codeStamps[iCode] != this._stamp) {
+						this._codeStamps[iCode] = this._stamp;
+						this._codeCounts[iCode] = 0;
+					}
+					this._codeCounts[iCode]++;
+					if(this._codeCounts[iCode] == this._codes[iCode].size()) {
+						this._candidates[nbCandidates++] = iCode;
+					}
+				}
+			}
+		}
+		return this._selection.select(this._codes, this._candidates, nbCandidates, trans, codeBuffer, uncovered);
+	}
+
+}
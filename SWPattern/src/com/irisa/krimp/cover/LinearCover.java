@@ -0,0 +1,109 @@
+package com.irisa.krimp.cover;
+
+import java.util.Arrays;
+
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Linear scan of the code table in cover order, without any allocation per transaction.
+ * The part of the transaction not covered yet is kept in reusable buffers: a stamp per item and a count of items per signature bit, 
+ * so that its signature stays up to date as codes are subtracted and rejects most codes in one operation.
+ * 
+ * Uses internal buffers, an instance must not be shared between threads.
+ * @author pmaillot
+ *
+ */
+public class LinearCover implements CoverEngine {
+
+	private KItemset[] _codes;
+	private long[] _codeSignatures;
+
+	private int _stamp = 0; // Identifies the transaction being covered in _itemStamps, to avoid clearing it
+	private int[] _itemStamps; // _itemStamps[item] == _stamp if the item is in the transaction and not covered yet
+	private int[] _signatureBitCounts = new int[64]; // Number of remaining items setting each bit of the signature
+
+	/**
+	 * @param codes Codes of the code table, in cover order
+	 */
+	public LinearCover(KItemset[] codes) {
+		this._codes = codes;
+		this._codeSignatures = new long[codes.length];
+		int maxItem = -1;
+		for(int iCode = 0; iCode < codes.length; iCode++) {
+			this._codeSignatures[iCode] = codes[iCode].getSignature();
+			if(! codes[iCode].isEmpty()) {
+				maxItem = Math.max(maxItem, codes[iCode].itemAt(codes[iCode].size() - 1));
+			}
+		}
+		this._itemStamps = new int[maxItem + 1];
+	}
+
+	@Override
+	public int codeCount() {
+		return this._codes.length;
+	}
+
+	/**
+	 * @param trans Transaction to be covered
+	 * @param codeBuffer Receives the positions of the codes of the cover, in cover order. Must be as long as the array of codes.
+	 * @param uncovered Receives the items of the transaction not covered by any code
+	 * @return Number of codes of the cover
+	 */
+	@Override
+	public int cover(KItemset trans, int[] codeBuffer, KItemset uncovered) {
+		if(this._stamp == Integer.MAX_VALUE) {
+			Arrays.fill(this._itemStamps, 0);
+			this._stamp = 0;
+		}
+		this._stamp++;
+
+		Arrays.fill(this._signatureBitCounts, 0);
+		long signature = 0L;
+		for(int i = 0; i < trans.size(); i++) {
+			int item = trans.itemAt(i);
+			if(item < this._itemStamps.length) { // Other items are in no code
+				this._itemStamps[item] = this._stamp;
+				this._signatureBitCounts[KItemset.signatureBitIndex(item)]++;
+				signature |= KItemset.signatureBit(item);
+			}
+		}
+
+		int nbCodes = 0;
+		int remaining = trans.size();
+		for(int iCode = 0; iCode < this._codes.length && remaining > 0; iCode++) { // Searching for the cover
+			if((this._codeSignatures[iCode] & ~signature) != 0L) {
+				continue;
+			}
+			KItemset code = this._codes[iCode];
+			boolean contained = true;
+			for(int i = 0; i < code.size() && contained; i++) {
+				contained = this._itemStamps[code.itemAt(i)] == this._stamp;
+			}
+			if(contained) {
+				codeBuffer[nbCodes++] = iCode;
+				remaining -= code.size();
+				for(int i = 0; i < code.size(); i++) {
+					int item = code.itemAt(i);
+					this._itemStamps[item] = 0;
+					int bitIndex = KItemset.signatureBitIndex(item);
+					this._signatureBitCounts[bitIndex]--;
+					if(this._signatureBitCounts[bitIndex] == 0) {
+						signature &= ~(1L << bitIndex);
+					}
+				}
+			}
+		}
+
+		uncovered.clear();
+		if(remaining > 0) {
+			for(int i = 0; i < trans.size(); i++) {
+				int item = trans.itemAt(i);
+				if(item >= this._itemStamps.length || this._itemStamps[item] == this._stamp) {
+					uncovered.add(item);
+				}
+			}
+		}
+		return nbCodes;
+	}
+
+}
@@ -0,0 +1,43 @@
+package com.irisa.krimp.cover;
+
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Reference cover, straight from the KRIMP paper: the codes are tested one by one in cover order against the rest of the transaction, which is rebuilt after each code used.
+ * Slow, it is the baseline against which the other engines are checked.
+ * @author pmaillot
+ *
+ */
+public class NaiveCover implements CoverEngine {
+
+	private KItemset[] _codes;
+
+	/**
+	 * @param codes Codes of the code table, in cover order
+	 */
+	public NaiveCover(KItemset[] codes) {
+		this._codes = codes;
+	}
+
+	@Override
+	public int codeCount() {
+		return this._codes.length;
+	}
+
+	@Override
+	public int cover(KItemset trans, int[] codeBuffer, KItemset uncovered) {
+		KItemset auxTrans = new KItemset(trans);
+		int nbCodes = 0;
+		for(int iCode = 0; iCode < this._codes.length && auxTrans.size() != 0; iCode++) {
+			KItemset auxCode = this._codes[iCode];
+			if(auxTrans.containsAll(auxCode)) {
+				codeBuffer[nbCodes++] = iCode;
+				auxTrans = auxTrans.substraction(auxCode);
+			}
+		}
+		uncovered.clear();
+		uncovered.addAll(auxTrans);
+		return nbCodes;
+	}
+
+}
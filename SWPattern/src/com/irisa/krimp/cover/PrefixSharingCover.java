@@ -0,0 +1,234 @@
+package com.irisa.krimp.cover;
+
+import java.util.Arrays;
+
+import com.irisa.krimp.data.KItemset;
+import com.irisa.krimp.data.TransactionSet;
+
+/**
+ * Linear scan of the code table in cover order resuming the cover of the previous transaction.
+ * The cover only depends on the items of the transaction contained in the codes visited so far: until the first code containing an item present in only one of two transactions,
+ * both covers select the same codes. The cover of a transaction then reuses the codes selected for the previous one before that point and scans the code table from there.
+ *
+ * The savings depend on the order of the transactions, transactionOrder() sorts them so that consecutive transactions differ as late as possible in cover order.
+ * The covers are the same as those of LinearCover whatever the order.
+ *
+ * Uses internal buffers and keeps the last cover, an instance must not be shared between threads.
+ * @author pmaillot
+ *
+ */
+public class PrefixSharingCover implements CoverEngine {
+
+	private KItemset[] _codes;
+	private long[] _codeSignatures;
+	private int[] _firstCodes; // Position of the first code containing each item, _codes.length for the items in no code
+	private int _firstEmptyCode; // An empty code is used as long as some items remain, which does not depend on its items
+
+	private int _stamp = 0; // Identifies the transaction being covered in _itemStamps, to avoid clearing it
+	private int[] _itemStamps; // _itemStamps[item] == _stamp if the item is in the transaction and not covered yet
+	private int[] _signatureBitCounts = new int[64]; // Number of remaining items setting each bit of the signature
+	private long _signature = 0L; // Signature of the remaining items
+
+	private int[] _previousItems = new int[16]; // Items of the last covered transaction
+	private int _previousSize = -1; // -1 before the first cover
+	private int[] _previousCodes; // Positions of the codes of the last cover
+	private int _previousNbCodes = 0;
+
+	/**
+	 * @param codes Codes of the code table, in cover order
+	 */
+	public PrefixSharingCover(KItemset[] codes) {
+		this._codes = codes;
+		this._codeSignatures = new long[codes.length];
+		this._previousCodes = new int[codes.length];
+		int maxItem = -1;
+		for(int iCode = 0; iCode < codes.length; iCode++) {
+			this._codeSignatures[iCode] = codes[iCode].getSignature();
+			if(! codes[iCode].isEmpty()) {
+				maxItem = Math.max(maxItem, codes[iCode].itemAt(codes[iCode].size() - 1));
+			}
+		}
+		this._itemStamps = new int[maxItem + 1];
+		this._firstCodes = new int[maxItem + 1];
+		Arrays.fill(this._firstCodes, codes.length);
+		this._firstEmptyCode = codes.length;
+		for(int iCode = codes.length - 1; iCode >= 0; iCode--) {
+			if(codes[iCode].isEmpty()) {
+				this._firstEmptyCode = iCode;
+			}
+			for(int i = 0; i < codes[iCode].size(); i++) {
+				this._firstCodes[codes[iCode].itemAt(i)] = iCode;
+			}
+		}
+	}
+
+	/**
+	 * @param item
+	 * @return Position of the first code containing the item, the number of codes if there is none
+	 */
+	private int firstCode(int item) {
+		return (item < this._firstCodes.length) ? this._firstCodes[item] : this._codes.length;
+	}
+
+	/**
+	 * Order of the transactions maximizing the shared cover prefixes: lexicographic order of their items sorted by position of their first code, then by item.
+	 * @param transactions
+	 * @return The indices of the transactions, in the order in which to cover them
+	 */
+	public int[] transactionOrder(TransactionSet transactions) {
+		long[][] keys = new long[transactions.size()][];
+		Integer[] order = new Integer[transactions.size()];
+		int iTrans = 0;
+		for(KItemset trans : transactions) {
+			long[] key = new long[trans.size()];
+			for(int i = 0; i < trans.size(); i++) {
+				int item = trans.itemAt(i);
+				key[i] = ((long) firstCode(item) << 32) | item;
+			}
+			Arrays.sort(key);
+			keys[iTrans] = key;
+			order[iTrans] = iTrans;
+			iTrans++;
+		}
+		Arrays.sort(order, (iTrans1, iTrans2) -> compareKeys(keys[iTrans1], keys[iTrans2])); // Stable, equal transactions keep their order
+
+		int[] result = new int[order.length];
+		for(int i = 0; i < order.length; i++) {
+			result[i] = order[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @param key1
+	 * @param key2
+	 * @return Lexicographic comparison of the keys, a key before the ones it is a prefix of
+	 */
+	private static int compareKeys(long[] key1, long[] key2) {
+		for(int i = 0; i < key1.length && i < key2.length; i++) {
+			if(key1[i] != key2[i]) {
+				return Long.compare(key1[i], key2[i]);
+			}
+		}
+		return Integer.compare(key1.length, key2.length);
+	}
+
+	/**
+	 * @param trans
+	 * @return Position of the first code containing an item present in only one of trans and the previous transaction, or of the first empty code, 0 if there is no previous transaction
+	 */
+	private int divergence(KItemset trans) {
+		if(this._previousSize < 0) {
+			return 0;
+		}
+		int result = this._firstEmptyCode;
+		int i = 0;
+		int j = 0;
+		while(i < trans.size() || j < this._previousSize) {
+			if(j == this._previousSize || (i < trans.size() && trans.itemAt(i) < this._previousItems[j])) {
+				result = Math.min(result, firstCode(trans.itemAt(i++)));
+			} else if(i == trans.size() || this._previousItems[j] < trans.itemAt(i)) {
+				result = Math.min(result, firstCode(this._previousItems[j++]));
+			} else {
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public int codeCount() {
+		return this._codes.length;
+	}
+
+	/**
+	 * @param trans Transaction to be covered
+	 * @param codeBuffer Receives the positions of the codes of the cover, in cover order. Must be as long as the array of codes.
+	 * @param uncovered Receives the items of the transaction not covered by any code
+	 * @return Number of codes of the cover
+	 */
+	@Override
+	public int cover(KItemset trans, int[] codeBuffer, KItemset uncovered) {
+		int divergence = divergence(trans);
+
+		if(this._stamp == Integer.MAX_VALUE) {
+			Arrays.fill(this._itemStamps, 0);
+			this._stamp = 0;
+		}
+		this._stamp++;
+
+		Arrays.fill(this._signatureBitCounts, 0);
+		this._signature = 0L;
+		for(int i = 0; i < trans.size(); i++) {
+			int item = trans.itemAt(i);
+			if(item < this._itemStamps.length) { // Other items are in no code
+				this._itemStamps[item] = this._stamp;
+				this._signatureBitCounts[KItemset.signatureBitIndex(item)]++;
+				this._signature |= KItemset.signatureBit(item);
+			}
+		}
+
+		int nbCodes = 0;
+		int remaining = trans.size();
+		for(int i = 0; i < this._previousNbCodes && this._previousCodes[i] < divergence; i++) { // Shared prefix
+			int iCode = this._previousCodes[i];
+			codeBuffer[nbCodes++] = iCode;
+			remaining -= this._codes[iCode].size();
+			subtract(this._codes[iCode]);
+		}
+		for(int iCode = divergence; iCode < this._codes.length && remaining > 0; iCode++) {
+			if((this._codeSignatures[iCode] & ~this._signature) != 0L) {
+				continue;
+			}
+			KItemset code = this._codes[iCode];
+			boolean contained = true;
+			for(int i = 0; i < code.size() && contained; i++) {
+				contained = this._itemStamps[code.itemAt(i)] == this._stamp;
+			}
+			if(contained) {
+				codeBuffer[nbCodes++] = iCode;
+				remaining -= code.size();
+				subtract(code);
+			}
+		}
+
+		if(trans.size() > this._previousItems.length) {
+			this._previousItems = new int[Math.max(trans.size(), this._previousItems.length * 2)];
+		}
+		for(int i = 0; i < trans.size(); i++) {
+			this._previousItems[i] = trans.itemAt(i);
+		}
+		this._previousSize = trans.size();
+		System.arraycopy(codeBuffer, 0, this._previousCodes, 0, nbCodes);
+		this._previousNbCodes = nbCodes;
+
+		uncovered.clear();
+		if(remaining > 0) {
+			for(int i = 0; i < trans.size(); i++) {
+				int item = trans.itemAt(i);
+				if(item >= this._itemStamps.length || this._itemStamps[item] == this._stamp) {
+					uncovered.add(item);
+				}
+			}
+		}
+		return nbCodes;
+	}
+
+	/**
+	 * Mark the items of a code of the cover as covered
+	 * @param code
+	 */
+	private void subtract(KItemset code) {
+		for(int i = 0; i < code.size(); i++) {
+			int item = code.itemAt(i);
+			this._itemStamps[item] = 0;
+			int bitIndex = KItemset.signatureBitIndex(item);
+			this._signatureBitCounts[bitIndex]--;
+			if(this._signatureBitCounts[bitIndex] == 0) {
+				this._signature &= ~(1L << bitIndex);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.irisa.krimp.cover;
+
+import java.util.Arrays;
+
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Cover of transactions using a prefix tree of the codes, built over their items in ascending order.
+ * Each node carries the positions in cover order of the codes ending there.
+ * Walking the tree with the sorted items of a transaction enumerates the codes contained in it, 
+ * the codes sharing a prefix being tested together. Those codes are then visited in cover order, giving the same covers as the linear scan of the code table.
+ * 
+ * Uses internal buffers, an instance must not be shared between threads.
+ * @author pmaillot
+ *
+ */
+public class TrieCover implements CoverEngine {
+
+	/**
+	 * Node of the prefix tree, children are sorted by item
+	 */
+	private static class Node {
+		int[] childItems = new int[0];
+		Node[] children = new Node[0];
+		int[] codes = new int[0]; // Positions of the codes ending at this node
+
+		Node child(int item) {
+			int pos = Arrays.binarySearch(this.childItems, item);
+			if(pos < 0) {
+				pos = -(pos + 1);
+				this.childItems = insert(this.childItems, pos, item);
+				Node[] newChildren = new Node[this.children.length + 1];
+				System.arraycopy(this.children, 0, newChildren, 0, pos);
+				newChildren[pos] = new Node();
+				System.arraycopy(this.children, pos, newChildren, pos + 1, this.children.length - pos);
+				this.children = newChildren;
+			}
+			return this.children[pos];
+		}
+
+		void addCode(int iCode) {
+			this.codes = insert(this.codes, this.codes.length, iCode);
+		}
+
+		private static int[] insert(int[] array, int pos, int value) {
+			int[] result = new int[array.length + 1];
+			System.arraycopy(array, 0, result, 0, pos);
+			result[pos] = value;
+			System.arraycopy(array, pos, result, pos + 1, array.length - pos);
+			return result;
+		}
+	}
+
+	private KItemset[] _codes;
+	private Node _root = new Node();
+	private int[] _candidates;
+	private int _nbCandidates = 0;
+	private CandidateSelection _selection;
+
+	/**
+	 * @param codes Codes of the code table, in cover order
+	 */
+	public TrieCover(KItemset[] codes) {
+		this._codes = codes;
+		int maxItem = -1;
+		for(int iCode = 0; iCode < codes.length; iCode++) {
+			KItemset code = codes[iCode];
+			Node node = this._root;
+			for(int i = 0; i < code.size(); i++) {
+				node = node.child(code.itemAt(i));
+			}
+			node.addCode(iCode);
+			if(! code.isEmpty()) {
+				maxItem = Math.max(maxItem, code.itemAt(code.size() - 1));
+			}
+		}
+		this._candidates = new int[codes.length];
+		this._selection = new CandidateSelection(maxItem + 1);
+	}
+
+	@Override
+	public int codeCount() {
+		return this._codes.length;
+	}
+
+	/**
+	 * @param trans Transaction to be covered
+	 * @param codeBuffer Receives the positions of the codes of the cover, in cover order. Must be as long as the array of codes.
+	 * @param uncovered Receives the items of the transaction not covered by any code
+	 * @return Number of codes of the cover
+	 */
+	@Override
+	public int cover(KItemset trans, int[] codeBuffer, KItemset uncovered) {
+		this._nbCandidates = 0;
+		collectCodes(this._root, trans, 0);
+		return this._selection.select(this._codes, this._candidates, this._nbCandidates, trans, codeBuffer, uncovered);
+	}
+
+	/**
+	 * Add to the candidates the codes of the subtree of node contained in the items of trans from position from
+	 * @param node
+	 * @param trans
+	 * @param from
+	 */
+	private void collectCodes(Node node, KItemset trans, int from) {
+		for(int iCode : node.codes) {
+			this._candidates[this._nbCandidates++] = iCode;
+		}
+		// Merge of the sorted children items with the sorted remaining items of the transaction
+		int iChild = 0;
+		int iItem = from;
+		while(iChild < node.childItems.length && iItem < trans.size()) {
+			int childItem = node.childItems[iChild];
+			int item = trans.itemAt(iItem);
+			if(childItem < item) {
+				iChild++;
+			} else if(childItem > item) {
+				iItem++;
+			} else {
+				collectCodes(node.children[iChild], trans, iItem + 1);
+				iChild++;
+				iItem++;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.irisa.krimp.cover;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import com.irisa.krimp.data.CompressedBitmap;
+import com.irisa.krimp.data.DataIndexes;
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Column-wise cover of a whole transaction set, using the transaction bitmaps of the items.
+ * The codes are visited once in cover order: the transactions using a code are the intersection of the bitmaps of its items restricted to the transactions where they are not covered yet,
+ * then its items are marked as covered in these transactions. This gives the same covers as covering each transaction separately.
+ *
+ * The bitmaps of DataIndexes are not modified, the operations on compressed bitmaps build new ones.
+ * @author pmaillot
+ *
+ */
+public class VerticalCover {
+
+	private KItemset[] _codes;
+
+	/**
+	 * @param codes Codes of the code table, in cover order
+	 */
+	public VerticalCover(KItemset[] codes) {
+		this._codes = codes;
+	}
+
+	/**
+	 * @param index Transaction bitmaps of the items of the transaction set
+	 * @param multiplicities Number of copies of each transaction, by index, null if they are all 1
+	 * @param codeCounts Receives the occurrences of each code in the covers, by position in cover order, weighted by the multiplicities
+	 * @return For each item left uncovered in some transaction, the bitmap of these transactions
+	 */
+	public HashMap<Integer, CompressedBitmap> cover(DataIndexes index, int[] multiplicities, int[] codeCounts) {
+		HashMap<Integer, CompressedBitmap> uncovered = new HashMap<Integer, CompressedBitmap>(); // Transactions where each item is not covered yet
+		Iterator<Integer> itItems = index.itemIterator();
+		while(itItems.hasNext()) {
+			int item = itItems.next();
+			uncovered.put(item, index.getItemTransactionBitmap(item));
+		}
+
+		for(int iCode = 0; iCode < this._codes.length; iCode++) {
+			KItemset code = this._codes[iCode];
+			codeCounts[iCode] = 0;
+			CompressedBitmap usingTransactions = usingTransactions(code, uncovered);
+			if(usingTransactions == null || usingTransactions.isEmpty()) {
+				continue;
+			}
+			codeCounts[iCode] = weightedCardinality(usingTransactions, multiplicities);
+			for(int i = 0; i < code.size(); i++) {
+				int item = code.itemAt(i);
+				CompressedBitmap itemBitmap = uncovered.get(item).andNot(usingTransactions);
+				if(itemBitmap.isEmpty()) {
+					uncovered.remove(item);
+				} else {
+					uncovered.put(item, itemBitmap);
+				}
+			}
+		}
+		return uncovered;
+	}
+
+	/**
+	 * @param code
+	 * @param uncovered
+	 * @return The transactions where all the items of code are still uncovered, null if there is none
+	 */
+	private static CompressedBitmap usingTransactions(KItemset code, HashMap<Integer, CompressedBitmap> uncovered) {
+		if(code.isEmpty()) {
+			return null;
+		}
+		CompressedBitmap result = uncovered.get(code.itemAt(0));
+		for(int i = 1; i < code.size() && result != null && ! result.isEmpty(); i++) {
+			CompressedBitmap itemBitmap = uncovered.get(code.itemAt(i));
+			result = (itemBitmap == null) ? null : result.and(itemBitmap);
+		}
+		return result;
+	}
+
+	/**
+	 * @param transactions
+	 * @param multiplicities Number of copies of each transaction, null if they are all 1
+	 * @return Number of transactions in the bitmap, counting their copies
+	 */
+	public static int weightedCardinality(CompressedBitmap transactions, int[] multiplicities) {
+		if(multiplicities == null) {
+			return transactions.cardinality();
+		}
+		int result = 0;
+		for(int iTrans = transactions.nextSetBit(0); iTrans >= 0; iTrans = transactions.nextSetBit(iTrans + 1)) {
+			result += multiplicities[iTrans];
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,163 @@
+package com.irisa.krimp.data;
+
+import java.util.Arrays;
+
+/**
+ * Itemset stored as a bitmap of 64 bits words, the bit i is set if the item i belongs to the itemset.
+ * Intended for dense item universes, as the ones given by AttributeIndex (items numbered from 0).
+ * Inclusion is a handful of AND/compare operations, substraction is an AND-NOT.
+ * @author pmaillot
+ *
+ */
+public class BitmapItemset {
+
+	private long[] _words;
+
+	/**
+	 * @param universeSize number of items that can be stored without resizing
+	 */
+	public BitmapItemset(int universeSize) {
+		this._words = new long[wordIndex(Math.max(universeSize, 1) - 1) + 1];
+	}
+
+	public BitmapItemset(KItemset kis) {
+		this(kis.isEmpty() ? 1 : kis.itemAt(kis.size() - 1) + 1);
+		for(int i = 0; i < kis.size(); i++) {
+			set(kis.itemAt(i));
+		}
+	}
+
+	public BitmapItemset(BitmapItemset bis) {
+		this._words = Arrays.copyOf(bis._words, bis._words.length);
+	}
+
+	private static int wordIndex(int item) {
+		return item >>> 6;
+	}
+
+	private void ensureCapacity(int wordIndex) {
+		if(wordIndex >= this._words.length) {
+			this._words = Arrays.copyOf(this._words, Math.max(wordIndex + 1, this._words.length * 2));
+		}
+	}
+
+	public void set(int item) {
+		int wIndex = wordIndex(item);
+		ensureCapacity(wIndex);
+		this._words[wIndex] |= (1L << item);
+	}
+
+	public void clear(int item) {
+		int wIndex = wordIndex(item);
+		if(wIndex < this._words.length) {
+			this._words[wIndex] &= ~(1L << item);
+		}
+	}
+
+	public boolean get(int item) {
+		int wIndex = wordIndex(item);
+		return wIndex < this._words.length && (this._words[wIndex] & (1L << item)) != 0;
+	}
+
+	/**
+	 * Empty the itemset, the allocated words are kept
+	 */
+	public void clear() {
+		Arrays.fill(this._words, 0L);
+	}
+
+	/**
+	 * Replace the content of this itemset by the items of kis
+	 * @param kis
+	 */
+	public void setItems(KItemset kis) {
+		clear();
+		for(int i = 0; i < kis.size(); i++) {
+			set(kis.itemAt(i));
+		}
+	}
+
+	public boolean isEmpty() {
+		for(long word : this._words) {
+			if(word != 0L) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int cardinality() {
+		int result = 0;
+		for(long word : this._words) {
+			result += Long.bitCount(word);
+		}
+		return result;
+	}
+
+	/**
+	 * @param bis
+	 * @return true if every item of this itemset is in bis
+	 */
+	public boolean isSubsetOf(BitmapItemset bis) {
+		int common = Math.min(this._words.length, bis._words.length);
+		for(int i = 0; i < common; i++) {
+			if((this._words[i] & ~bis._words[i]) != 0L) {
+				return false;
+			}
+		}
+		for(int i = common; i < this._words.length; i++) {
+			if(this._words[i] != 0L) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the items of bis from this itemset
+	 * @param bis
+	 */
+	public void andNot(BitmapItemset bis) {
+		int common = Math.min(this._words.length, bis._words.length);
+		for(int i = 0; i < common; i++) {
+			this._words[i] &= ~bis._words[i];
+		}
+	}
+
+	/**
+	 * @param fromItem
+	 * @return the first item greater or equal than fromItem in this itemset, -1 if there is none
+	 */
+	public int nextSetBit(int fromItem) {
+		int wIndex = wordIndex(fromItem);
+		if(wIndex >= this._words.length) {
+			return -1;
+		}
+		long word = this._words[wIndex] & (-1L << fromItem);
+		while(true) {
+			if(word != 0L) {
+				return (wIndex * 64) + Long.numberOfTrailingZeros(word);
+			}
+			wIndex++;
+			if(wIndex == this._words.length) {
+				return -1;
+			}
+			word = this._words[wIndex];
+		}
+	}
+
+	public KItemset toKItemset() {
+		int[] items = new int[cardinality()];
+		int index = 0;
+		for(int item = nextSetBit(0); item >= 0; item = nextSetBit(item + 1)) {
+			items[index++] = item;
+		}
+		return new KItemset(items);
+	}
+
+	@Override
+	public String toString() {
+		return toKItemset().toString();
+	}
+
+}
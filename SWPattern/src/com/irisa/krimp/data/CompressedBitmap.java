@@ -0,0 +1,722 @@
+package com.irisa.krimp.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compressed set of non-negative integers, in the manner of Roaring bitmaps.
+ * The values are split in chunks of 2^16 by their 16 high bits, each chunk being stored in the smallest of three containers:
+ * a sorted array of the 16 low bits for sparse chunks, a 1024 words bitmap for dense chunks, or a list of runs for chunks made of long intervals.
+ * Sparse transaction vectors then take a few bytes per transaction instead of a bit per transaction of the whole dataset.
+ *
+ * Immutable once built: the operations return new bitmaps, possibly sharing containers with their operands.
+ * @author pmaillot
+ *
+ */
+public class CompressedBitmap {
+
+	private static final int ARRAY_MAX_SIZE = 4096; // An array container with more values is bigger than a bitmap container
+	private static final int BITMAP_WORDS = 1024;
+	private static final Container[] NO_CONTAINERS = new Container[0];
+
+	private char[] _keys = new char[0]; // 16 high bits of the values of each container, sorted
+	private Container[] _containers = NO_CONTAINERS;
+	private int _size = 0; // Number of containers, none of them is empty
+	private int _cardinality = -1; // Number of values, computed on the first call
+
+	CompressedBitmap() {
+	}
+
+	/**
+	 * @param bits
+	 * @return Compressed copy of the set bits
+	 */
+	public static CompressedBitmap valueOf(BitSet bits) {
+		CompressedBitmap result = new CompressedBitmap();
+		for(int value = bits.nextSetBit(0); value >= 0; value = bits.nextSetBit(value + 1)) {
+			result.add(value);
+		}
+		result.runOptimize();
+		return result;
+	}
+
+	/**
+	 * For the construction only, values added in increasing order are appended without search
+	 * @param value
+	 */
+	void add(int value) {
+		char key = (char) (value >>> 16);
+		char low = (char) value;
+		int pos = (this._size > 0 && this._keys[this._size - 1] == key) ? this._size - 1 : containerIndex(key);
+		if(pos >= 0) {
+			this._containers[pos] = this._containers[pos].add(low);
+		} else {
+			insertContainer(- pos - 1, key, new ArrayContainer().add(low));
+		}
+		this._cardinality = -1;
+	}
+
+	/**
+	 * Convert the containers to runs where it is smaller, to be called once the construction is done
+	 */
+	void runOptimize() {
+		for(int i = 0; i < this._size; i++) {
+			this._containers[i] = this._containers[i].runOptimize();
+		}
+	}
+
+	private int containerIndex(char key) {
+		return Arrays.binarySearch(this._keys, 0, this._size, key);
+	}
+
+	private void insertContainer(int pos, char key, Container container) {
+		if(this._size == this._keys.length) {
+			int capacity = Math.max(4, this._size * 2);
+			this._keys = Arrays.copyOf(this._keys, capacity);
+			this._containers = Arrays.copyOf(this._containers, capacity);
+		}
+		System.arraycopy(this._keys, pos, this._keys, pos + 1, this._size - pos);
+		System.arraycopy(this._containers, pos, this._containers, pos + 1, this._size - pos);
+		this._keys[pos] = key;
+		this._containers[pos] = container;
+		this._size++;
+	}
+
+	private void appendContainer(char key, Container container) {
+		insertContainer(this._size, key, container);
+	}
+
+	public boolean contains(int value) {
+		if(value < 0) {
+			return false;
+		}
+		int pos = containerIndex((char) (value >>> 16));
+		return pos >= 0 && this._containers[pos].contains((char) value);
+	}
+
+	public int cardinality() {
+		if(this._cardinality < 0) {
+			int result = 0;
+			for(int i = 0; i < this._size; i++) {
+				result += this._containers[i].cardinality();
+			}
+			this._cardinality = result;
+		}
+		return this._cardinality;
+	}
+
+	public boolean isEmpty() {
+		return this._size == 0;
+	}
+
+	/**
+	 * @param fromIndex
+	 * @return The smallest value greater or equal to fromIndex, -1 if there is none, as BitSet.nextSetBit
+	 */
+	public int nextSetBit(int fromIndex) {
+		int fromKey = fromIndex >>> 16;
+		int pos = containerIndex((char) fromKey);
+		if(pos < 0) {
+			pos = - pos - 1;
+		}
+		for(; pos < this._size; pos++) {
+			int from = (this._keys[pos] == fromKey) ? (fromIndex & 0xFFFF) : 0;
+			int low = this._containers[pos].nextValue(from);
+			if(low >= 0) {
+				return (this._keys[pos] << 16) | low;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param other
+	 * @return The values present in both bitmaps
+	 */
+	public CompressedBitmap and(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0, j = 0;
+		while(i < this._size && j < other._size) {
+			if(this._keys[i] < other._keys[j]) {
+				i++;
+			} else if(this._keys[i] > other._keys[j]) {
+				j++;
+			} else {
+				Container container = this._containers[i].and(other._containers[j]);
+				if(container != null) {
+					result.appendContainer(this._keys[i], container);
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param other
+	 * @return Number of values present in both bitmaps, without building their intersection
+	 */
+	public int andCardinality(CompressedBitmap other) {
+		int result = 0;
+		int i = 0, j = 0;
+		while(i < this._size && j < other._size) {
+			if(this._keys[i] < other._keys[j]) {
+				i++;
+			} else if(this._keys[i] > other._keys[j]) {
+				j++;
+			} else {
+				result += this._containers[i].andCardinality(other._containers[j]);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param other
+	 * @return The values of this bitmap absent from other
+	 */
+	public CompressedBitmap andNot(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int j = 0;
+		for(int i = 0; i < this._size; i++) {
+			while(j < other._size && other._keys[j] < this._keys[i]) {
+				j++;
+			}
+			Container container = this._containers[i];
+			if(j < other._size && other._keys[j] == this._keys[i]) {
+				container = container.andNot(other._containers[j]);
+			}
+			if(container != null) {
+				result.appendContainer(this._keys[i], container);
+			}
+		}
+		return result;
+	}
+
+	public BitSet toBitSet() {
+		BitSet result = new BitSet();
+		for(int value = nextSetBit(0); value >= 0; value = nextSetBit(value + 1)) {
+			result.set(value);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Approximate memory used by the containers
+	 */
+	public long sizeInBytes() {
+		long result = 0;
+		for(int i = 0; i < this._size; i++) {
+			result += 2 + this._containers[i].sizeInBytes();
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return toBitSet().toString();
+	}
+
+	/**
+	 * Values sharing the same 16 high bits. Empty containers are replaced by null in the results of the operations.
+	 */
+	private static abstract class Container {
+
+		abstract int cardinality();
+
+		abstract boolean contains(char value);
+
+		/**
+		 * @param value
+		 * @return The container with the value, this one or a new one if it had to change of type
+		 */
+		abstract Container add(char value);
+
+		/**
+		 * @param from
+		 * @return Smallest value greater or equal to from, -1 if there is none
+		 */
+		abstract int nextValue(int from);
+
+		/**
+		 * Set the bits of the values of this container in words
+		 * @param words Array of BITMAP_WORDS words
+		 */
+		abstract void fillWords(long[] words);
+
+		abstract Container runOptimize();
+
+		abstract int sizeInBytes();
+
+		Container and(Container other) {
+			if(other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+			long[] words = this.toWords();
+			long[] otherWords = other.words();
+			for(int i = 0; i < BITMAP_WORDS; i++) {
+				words[i] &= otherWords[i];
+			}
+			return fromWords(words);
+		}
+
+		int andCardinality(Container other) {
+			if(other instanceof ArrayContainer) {
+				return other.andCardinality(this);
+			}
+			long[] words = this.words();
+			long[] otherWords = other.words();
+			int result = 0;
+			for(int i = 0; i < BITMAP_WORDS; i++) {
+				result += Long.bitCount(words[i] & otherWords[i]);
+			}
+			return result;
+		}
+
+		Container andNot(Container other) {
+			long[] words = this.toWords();
+			if(other instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) other;
+				for(int i = 0; i < array._cardinality; i++) {
+					words[array._values[i] >>> 6] &= ~(1L << array._values[i]);
+				}
+			} else {
+				long[] otherWords = other.words();
+				for(int i = 0; i < BITMAP_WORDS; i++) {
+					words[i] &= ~otherWords[i];
+				}
+			}
+			return fromWords(words);
+		}
+
+		/**
+		 * @return New words containing the values of this container
+		 */
+		long[] toWords() {
+			long[] result = new long[BITMAP_WORDS];
+			fillWords(result);
+			return result;
+		}
+
+		/**
+		 * @return Words containing the values of this container, not to be modified
+		 */
+		long[] words() {
+			return toWords();
+		}
+
+		/**
+		 * @param words
+		 * @return The smallest of an array or bitmap container with the set bits of words, null if there is none
+		 */
+		static Container fromWords(long[] words) {
+			int cardinality = 0;
+			for(long word : words) {
+				cardinality += Long.bitCount(word);
+			}
+			if(cardinality == 0) {
+				return null;
+			}
+			if(cardinality > ARRAY_MAX_SIZE) {
+				return new BitmapContainer(words, cardinality);
+			}
+			char[] values = new char[cardinality];
+			int nbValues = 0;
+			for(int i = 0; i < BITMAP_WORDS; i++) {
+				long word = words[i];
+				while(word != 0) {
+					values[nbValues++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(values, cardinality);
+		}
+
+		/**
+		 * @param words
+		 * @return Number of intervals of consecutive set bits
+		 */
+		static int countRuns(long[] words) {
+			int result = 0;
+			for(int i = 0; i < BITMAP_WORDS; i++) {
+				long word = words[i];
+				long next = (i + 1 < BITMAP_WORDS) ? words[i + 1] : 0L;
+				// A run ends at each set bit followed by an unset one
+				result += Long.bitCount(word & ~(word >>> 1 | (next << 63)));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Sorted values, for chunks of at most ARRAY_MAX_SIZE values
+	 */
+	private static class ArrayContainer extends Container {
+
+		private char[] _values;
+		private int _cardinality;
+
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char[] values, int cardinality) {
+			this._values = values;
+			this._cardinality = cardinality;
+		}
+
+		@Override
+		int cardinality() {
+			return this._cardinality;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(this._values, 0, this._cardinality, value) >= 0;
+		}
+
+		@Override
+		Container add(char value) {
+			int pos = (this._cardinality > 0 && this._values[this._cardinality - 1] < value) ? - this._cardinality - 1 : Arrays.binarySearch(this._values, 0, this._cardinality, value);
+			if(pos >= 0) {
+				return this;
+			}
+			if(this._cardinality == ARRAY_MAX_SIZE) {
+				long[] words = toWords();
+				words[value >>> 6] |= 1L << value;
+				return new BitmapContainer(words, this._cardinality + 1);
+			}
+			pos = - pos - 1;
+			if(this._cardinality == this._values.length) {
+				this._values = Arrays.copyOf(this._values, Math.min(ARRAY_MAX_SIZE, this._values.length * 2));
+			}
+			System.arraycopy(this._values, pos, this._values, pos + 1, this._cardinality - pos);
+			this._values[pos] = value;
+			this._cardinality++;
+			return this;
+		}
+
+		@Override
+		int nextValue(int from) {
+			int pos = Arrays.binarySearch(this._values, 0, this._cardinality, (char) from);
+			if(pos < 0) {
+				pos = - pos - 1;
+			}
+			return (pos < this._cardinality) ? this._values[pos] : -1;
+		}
+
+		@Override
+		void fillWords(long[] words) {
+			for(int i = 0; i < this._cardinality; i++) {
+				words[this._values[i] >>> 6] |= 1L << this._values[i];
+			}
+		}
+
+		@Override
+		Container runOptimize() {
+			int nbRuns = 0;
+			for(int i = 0; i < this._cardinality; i++) {
+				if(i == 0 || this._values[i] != this._values[i - 1] + 1) {
+					nbRuns++;
+				}
+			}
+			if(RunContainer.sizeInBytes(nbRuns) < 2 * this._cardinality) {
+				return new RunContainer(toWords(), nbRuns, this._cardinality);
+			}
+			if(this._values.length > this._cardinality) {
+				this._values = Arrays.copyOf(this._values, this._cardinality);
+			}
+			return this;
+		}
+
+		@Override
+		int sizeInBytes() {
+			return 2 * this._values.length;
+		}
+
+		@Override
+		Container and(Container other) {
+			char[] values = new char[this._cardinality];
+			int nbValues = 0;
+			if(other instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) other;
+				int i = 0, j = 0;
+				while(i < this._cardinality && j < array._cardinality) {
+					if(this._values[i] < array._values[j]) {
+						i++;
+					} else if(this._values[i] > array._values[j]) {
+						j++;
+					} else {
+						values[nbValues++] = this._values[i];
+						i++;
+						j++;
+					}
+				}
+			} else {
+				for(int i = 0; i < this._cardinality; i++) {
+					if(other.contains(this._values[i])) {
+						values[nbValues++] = this._values[i];
+					}
+				}
+			}
+			return (nbValues == 0) ? null : new ArrayContainer(values, nbValues);
+		}
+
+		@Override
+		int andCardinality(Container other) {
+			int result = 0;
+			if(other instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) other;
+				int i = 0, j = 0;
+				while(i < this._cardinality && j < array._cardinality) {
+					if(this._values[i] < array._values[j]) {
+						i++;
+					} else if(this._values[i] > array._values[j]) {
+						j++;
+					} else {
+						result++;
+						i++;
+						j++;
+					}
+				}
+			} else {
+				for(int i = 0; i < this._cardinality; i++) {
+					if(other.contains(this._values[i])) {
+						result++;
+					}
+				}
+			}
+			return result;
+		}
+
+		@Override
+		Container andNot(Container other) {
+			char[] values = new char[this._cardinality];
+			int nbValues = 0;
+			for(int i = 0; i < this._cardinality; i++) {
+				if(! other.contains(this._values[i])) {
+					values[nbValues++] = this._values[i];
+				}
+			}
+			if(nbValues == this._cardinality) {
+				return this;
+			}
+			return (nbValues == 0) ? null : new ArrayContainer(values, nbValues);
+		}
+	}
+
+	/**
+	 * One bit per possible value, for chunks of more than ARRAY_MAX_SIZE values
+	 */
+	private static class BitmapContainer extends Container {
+
+		private long[] _words;
+		private int _cardinality;
+
+		BitmapContainer(long[] words, int cardinality) {
+			this._words = words;
+			this._cardinality = cardinality;
+		}
+
+		@Override
+		int cardinality() {
+			return this._cardinality;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return (this._words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		Container add(char value) {
+			if(! contains(value)) {
+				this._words[value >>> 6] |= 1L << value;
+				this._cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		int nextValue(int from) {
+			int i = from >>> 6;
+			long word = this._words[i] & (-1L << from);
+			while(true) {
+				if(word != 0) {
+					return (i << 6) + Long.numberOfTrailingZeros(word);
+				}
+				if(++i == BITMAP_WORDS) {
+					return -1;
+				}
+				word = this._words[i];
+			}
+		}
+
+		@Override
+		void fillWords(long[] words) {
+			for(int i = 0; i < BITMAP_WORDS; i++) {
+				words[i] |= this._words[i];
+			}
+		}
+
+		@Override
+		long[] words() {
+			return this._words;
+		}
+
+		@Override
+		Container runOptimize() {
+			int nbRuns = countRuns(this._words);
+			if(RunContainer.sizeInBytes(nbRuns) < 8 * BITMAP_WORDS) {
+				return new RunContainer(this._words, nbRuns, this._cardinality);
+			}
+			return this;
+		}
+
+		@Override
+		int sizeInBytes() {
+			return 8 * BITMAP_WORDS;
+		}
+	}
+
+	/**
+	 * Intervals of consecutive values, for chunks made of few long intervals
+	 */
+	private static class RunContainer extends Container {
+
+		private char[] _starts; // First value of each run, sorted
+		private char[] _lengths; // Number of values of each run minus one
+		private int _cardinality;
+
+		/**
+		 * @param words Values of the container
+		 * @param nbRuns Number of intervals of consecutive values in words
+		 * @param cardinality Number of values in words
+		 */
+		RunContainer(long[] words, int nbRuns, int cardinality) {
+			this._starts = new char[nbRuns];
+			this._lengths = new char[nbRuns];
+			this._cardinality = cardinality;
+			int iRun = 0;
+			int value = nextSetBit(words, 0);
+			while(value >= 0) {
+				int end = nextClearBit(words, value);
+				this._starts[iRun] = (char) value;
+				this._lengths[iRun] = (char) (end - value - 1);
+				iRun++;
+				value = (end < BITMAP_WORDS * 64) ? nextSetBit(words, end) : -1;
+			}
+		}
+
+		static int sizeInBytes(int nbRuns) {
+			return 4 * nbRuns;
+		}
+
+		private static int nextSetBit(long[] words, int from) {
+			int i = from >>> 6;
+			if(i >= BITMAP_WORDS) {
+				return -1;
+			}
+			long word = words[i] & (-1L << from);
+			while(word == 0) {
+				if(++i == BITMAP_WORDS) {
+					return -1;
+				}
+				word = words[i];
+			}
+			return (i << 6) + Long.numberOfTrailingZeros(word);
+		}
+
+		private static int nextClearBit(long[] words, int from) {
+			int i = from >>> 6;
+			long word = ~words[i] & (-1L << from);
+			while(word == 0) {
+				if(++i == BITMAP_WORDS) {
+					return BITMAP_WORDS * 64;
+				}
+				word = ~words[i];
+			}
+			return (i << 6) + Long.numberOfTrailingZeros(word);
+		}
+
+		/**
+		 * @param value
+		 * @return Index of the last run starting at or before value, -1 if there is none
+		 */
+		private int runIndex(int value) {
+			int low = 0, high = this._starts.length - 1;
+			while(low <= high) {
+				int middle = (low + high) >>> 1;
+				if(this._starts[middle] <= value) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return high;
+		}
+
+		@Override
+		int cardinality() {
+			return this._cardinality;
+		}
+
+		@Override
+		boolean contains(char value) {
+			int iRun = runIndex(value);
+			return iRun >= 0 && value <= this._starts[iRun] + this._lengths[iRun];
+		}
+
+		@Override
+		Container add(char value) {
+			if(contains(value)) {
+				return this;
+			}
+			long[] words = toWords();
+			words[value >>> 6] |= 1L << value;
+			return fromWords(words);
+		}
+
+		@Override
+		int nextValue(int from) {
+			int iRun = runIndex(from);
+			if(iRun >= 0 && from <= this._starts[iRun] + this._lengths[iRun]) {
+				return from;
+			}
+			return (iRun + 1 < this._starts.length) ? this._starts[iRun + 1] : -1;
+		}
+
+		@Override
+		void fillWords(long[] words) {
+			for(int iRun = 0; iRun < this._starts.length; iRun++) {
+				int start = this._starts[iRun];
+				int end = start + this._lengths[iRun] + 1; // exclusive
+				int firstWord = start >>> 6;
+				int lastWord = (end - 1) >>> 6;
+				if(firstWord == lastWord) {
+					words[firstWord] |= (-1L << start) & (-1L >>> -end);
+				} else {
+					words[firstWord] |= -1L << start;
+					for(int i = firstWord + 1; i < lastWord; i++) {
+						words[i] = -1L;
+					}
+					words[lastWord] |= -1L >>> -end;
+				}
+			}
+		}
+
+		@Override
+		Container runOptimize() {
+			return this;
+		}
+
+		@Override
+		int sizeInBytes() {
+			return sizeInBytes(this._starts.length);
+		}
+	}
+
+}
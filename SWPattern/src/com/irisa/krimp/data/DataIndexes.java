@@ -1,96 +1,68 @@
 package com.irisa.krimp.data;
 
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.function.Consumer;
+import java.util.NoSuchElementException;
 
 import org.apache.log4j.Logger;
 
-import com.irisa.exception.LogicException;
-
+/**
+ * Vertical index of a transaction set: for each item, the compressed bitmap of the indices of the transactions containing it.
+ * The bitmaps are addressed by item in an array, the transactions of a code are the intersection of those of its items.
+ * @author pmaillot
+ *
+ */
 public class DataIndexes {
 	
 	private static Logger logger = Logger.getLogger(DataIndexes.class);
 
-	private ItemsetSet _transactions = null;
-	private HashSet<Integer> _items = new HashSet<Integer>();
-	private HashMap<Integer, BitSet> _itemTransactionVectors = new HashMap<Integer, BitSet>();
-	private HashMap<KItemset, BitSet> _transactionItemVectors = new HashMap<KItemset, BitSet>();
-	private HashMap<KItemset, BitSet> _codeItemVectors = new HashMap<KItemset, BitSet>();
-	private HashMap<KItemset, BitSet> _codeTransactionVectors = new HashMap<KItemset, BitSet>();
+	private static final CompressedBitmap EMPTY_BITMAP = new CompressedBitmap();
+
+	private TransactionSet _transactions = null;
+	private CompressedBitmap[] _itemTransactionBitmaps = new CompressedBitmap[0]; // Transactions containing each item, null for the items of no transaction
+	private int _numberOfItems = 0;
+	private int[] _multiplicities = null; // Multiplicity of each transaction, null if they are all 1
 	
 	private int _highestItemIndice = 0;
 	
-	public DataIndexes(ItemsetSet transactions) {
+	public DataIndexes(TransactionSet transactions) {
 		this._transactions = transactions;
 		
 		analyze();
 	}
 	
 	private void analyze() {
-		for(int iTrans = 0; iTrans < this._transactions.size(); iTrans++ ) {
-			KItemset trans = this._transactions.get(iTrans);
-			if(this._transactionItemVectors.get(trans) == null) {
-				this._transactionItemVectors.put(trans, new BitSet());
-			}
-			Iterator<Integer> itTrans = trans.iterator();
-			while(itTrans.hasNext()) {
-				int item = itTrans.next();
-				KItemset single = Utils.createCodeSingleton(item);
-				if(this._codeItemVectors.get(single) == null) {
-					this._codeItemVectors.put(single, new BitSet());
-					this._codeItemVectors.get(single).set(item);
+		int iTrans = 0;
+		for(KItemset trans : this._transactions) {
+			for(int i = 0; i < trans.size(); i++) {
+				int item = trans.itemAt(i);
+				if(item >= this._itemTransactionBitmaps.length) {
+					this._itemTransactionBitmaps = Arrays.copyOf(this._itemTransactionBitmaps, Math.max(item + 1, this._itemTransactionBitmaps.length * 2));
 				}
-				if(this._codeTransactionVectors.get(single) == null) {
-					this._codeTransactionVectors.put(single, new BitSet());
-				}
-				if(! this._items.contains(item)) {
-					this._items.add(item);
+				if(this._itemTransactionBitmaps[item] == null) {
+					this._itemTransactionBitmaps[item] = new CompressedBitmap();
+					this._numberOfItems++;
 				}
 				if(_highestItemIndice < item) {
 					this._highestItemIndice = item;
 				}
-				if(_itemTransactionVectors.get(item) == null) {
-					this._itemTransactionVectors.put(item, new BitSet());
-				}
-				this._itemTransactionVectors.get(item).set(iTrans);
-				this._transactionItemVectors.get(trans).set(item);
-				this._codeTransactionVectors.get(single).set(iTrans);
+				this._itemTransactionBitmaps[item].add(iTrans);
 			}
-		}
-	}
-	
-	private void computeCodeTransactionVector(KItemset code) {
-//		logger.debug("computeCodeTransactionVector " + code);
-		BitSet transVector = new BitSet();
-
-		Iterator<Integer> itCode = code.iterator();
-		if(itCode.hasNext()) {
-			transVector.or(this.getItemTransactionVector(itCode.next()));
-			while(itCode.hasNext()) {
-				int item = itCode.next();
-	//			logger.debug("computeCodeTransactionVector then " + item + ": " + this._itemTransactionVectors.get(item));
-				
-				transVector.and(this.getItemTransactionVector(item));
+			if(trans.getMultiplicity() != 1 && this._multiplicities == null) {
+				this._multiplicities = new int[this._transactions.size()];
+				Arrays.fill(this._multiplicities, 1);
+			}
+			if(this._multiplicities != null) {
+				this._multiplicities[iTrans] = trans.getMultiplicity();
 			}
+			iTrans++;
 		}
-		this._codeTransactionVectors.put(code, transVector);
-//		logger.debug("code: " + code + " (" + code.getAbsoluteSupport() + ") " + this._codeTransactionVectors.get(code));
-		
-	}
-	
-	private void computeCodeItemVector(KItemset code) {
-		BitSet itemVector = new BitSet();
-
-		Iterator<Integer> itCode = code.iterator();
-		while(itCode.hasNext()) {
-			int item = itCode.next();
-			
-			itemVector.set(item);
+		for(CompressedBitmap bitmap : this._itemTransactionBitmaps) {
+			if(bitmap != null) {
+				bitmap.runOptimize();
+			}
 		}
-		this._codeItemVectors.put(code, itemVector);
 	}
 	
 	public int getNumberOfTransactions() {
@@ -98,43 +70,110 @@ public class DataIndexes {
 	}
 	
 	public int getNumberOfItems() {
-		return this._items.size();
+		return this._numberOfItems;
 	}
 	
 	public int getItemSupport(int item) {
-		return this.getItemTransactionVector(item).cardinality();
+		return this.getItemTransactionBitmap(item).cardinality();
 	}
 	
+	/**
+	 * @param code
+	 * @return Number of transactions containing code, counted on the intersection of the bitmaps of its items
+	 */
 	public int getCodeSupport(KItemset code) {
-		return getCodeTransactionVector(code).cardinality();
+		if(code.size() == 2) {
+			return this.getItemTransactionBitmap(code.itemAt(0)).andCardinality(this.getItemTransactionBitmap(code.itemAt(1)));
+		}
+		return getCodeTransactionBitmap(code).cardinality();
 	}
 	
-	public BitSet getItemTransactionVector(int item) {
-		if(! this._itemTransactionVectors.containsKey(item)) {
-			this._itemTransactionVectors.put(item, new BitSet());
-			for(int iTrans = 0; iTrans < this._transactions.size(); iTrans++ ) {
-				KItemset trans = this._transactions.get(iTrans);
-				if(trans.contains(item)) {
-					this._itemTransactionVectors.get(item).set(iTrans);
-					this._transactionItemVectors.get(trans).set(item);
-				}
-			}
+	/**
+	 * @param transactions Indices of transactions
+	 * @return Number of transactions in the bitmap, counting the multiplicity of the collapsed ones
+	 */
+	public int getWeightedSupport(CompressedBitmap transactions) {
+		if(this._multiplicities == null) {
+			return transactions.cardinality();
+		}
+		int result = 0;
+		for(int iTrans = transactions.nextSetBit(0); iTrans >= 0; iTrans = transactions.nextSetBit(iTrans + 1)) {
+			result += this._multiplicities[iTrans];
 		}
-		return this._itemTransactionVectors.get(item);
+		return result;
 	}
 	
-	public BitSet getCodeTransactionVector(KItemset code) {
-		if(this._codeItemVectors.get(code) == null) {
-			computeCodeItemVector(code);
-		}
-		if(this._codeTransactionVectors.get(code) == null) {
-			computeCodeTransactionVector(code);
+	/**
+	 * @param item
+	 * @return Indices of the transactions containing item, must not be modified
+	 */
+	public CompressedBitmap getItemTransactionBitmap(int item) {
+		if(item < 0 || item >= this._itemTransactionBitmaps.length || this._itemTransactionBitmaps[item] == null) {
+			return EMPTY_BITMAP;
 		}
-		return this._codeTransactionVectors.get(code);
+		return this._itemTransactionBitmaps[item];
 	}
 	
+	/**
+	 * @param code
+	 * @return Indices of the transactions containing code
+	 */
+	public CompressedBitmap getCodeTransactionBitmap(KItemset code) {
+		if(code.isEmpty()) {
+			return EMPTY_BITMAP;
+		}
+		CompressedBitmap result = this.getItemTransactionBitmap(code.itemAt(0));
+		for(int i = 1; i < code.size() && ! result.isEmpty(); i++) {
+			result = result.and(this.getItemTransactionBitmap(code.itemAt(i)));
+		}
+		return result;
+	}
+
+	/**
+	 * @param item
+	 * @return New BitSet of the indices of the transactions containing item
+	 */
+	public BitSet getItemTransactionVector(int item) {
+		return this.getItemTransactionBitmap(item).toBitSet();
+	}
+
+	/**
+	 * @param code
+	 * @return New BitSet of the indices of the transactions containing code
+	 */
+	public BitSet getCodeTransactionVector(KItemset code) {
+		return this.getCodeTransactionBitmap(code).toBitSet();
+	}
+
+	/**
+	 * @return Iterator over the items of the transactions, in increasing order
+	 */
 	public Iterator<Integer> itemIterator() {
-		return this._items.iterator();
+		return new Iterator<Integer>() {
+			private int _next = nextItem(0);
+
+			private int nextItem(int from) {
+				while(from < _itemTransactionBitmaps.length && _itemTransactionBitmaps[from] == null) {
+					from++;
+				}
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return _next < _itemTransactionBitmaps.length;
+			}
+
+			@Override
+			public Integer next() {
+				if(! hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int result = _next;
+				_next = nextItem(_next + 1);
+				return result;
+			}
+		};
 	}
 
 }
@@ -0,0 +1,245 @@
+package com.irisa.krimp.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+import org.apache.log4j.Logger;
+
+import com.irisa.exception.LogicException;
+
+/**
+ * Reversible renumbering of the items by decreasing support in a transaction set, the most frequent item becoming 0.
+ * Frequent items then share the first words of the bitmaps and the first levels of the tries of the cover algorithms, and the item ids are as small as possible.
+ * The measures do not depend on the numbering, as long as the transactions and the code tables compared use the same.
+ *
+ * Items unknown to the mapping met while renumbering (items of a code table absent from the transactions) get the next free ids.
+ * The mapping is persisted next to the conversion index of the items, see mappingFilename().
+ * @author pmaillot
+ *
+ */
+public class ItemRenumbering {
+
+	private static Logger logger = Logger.getLogger(ItemRenumbering.class);
+
+	public static final String MAPPING_EXTENSION = ".renumbering";
+
+	private int[] _newItems = new int[0]; // New id of each original item, -1 if unknown
+	private int[] _originalItems = new int[0]; // Original id of each new item
+	private int _size = 0; // Number of items in the mapping
+
+	protected ItemRenumbering() {
+	}
+
+	/**
+	 * Renumbering of the items of transactions by decreasing support, counting the multiplicity of the transactions. Items of same support keep their relative order.
+	 * @param transactions
+	 */
+	public ItemRenumbering(TransactionSet transactions) {
+		int[] supports = new int[0];
+		for(KItemset trans : transactions) {
+			for(int i = 0; i < trans.size(); i++) {
+				int item = trans.itemAt(i);
+				if(item >= supports.length) {
+					supports = Arrays.copyOf(supports, Math.max(item + 1, supports.length * 2));
+				}
+				supports[item] += trans.getMultiplicity();
+			}
+		}
+		final int[] itemSupports = supports;
+		Integer[] items = new Integer[itemSupports.length];
+		int nbItems = 0;
+		for(int item = 0; item < itemSupports.length; item++) {
+			if(itemSupports[item] > 0) {
+				items[nbItems++] = item;
+			}
+		}
+		Arrays.sort(items, 0, nbItems, (item1, item2) -> - Integer.compare(itemSupports[item1], itemSupports[item2])); // Stable
+		for(int i = 0; i < nbItems; i++) {
+			addItem(items[i]);
+		}
+	}
+
+	/**
+	 * @param indexFilename Conversion index of the items (.idx) of the transactions
+	 * @return The file of the renumbering of these items
+	 */
+	public static String mappingFilename(String indexFilename) {
+		return indexFilename + MAPPING_EXTENSION;
+	}
+
+	/**
+	 * Give the next free id to an original item
+	 * @param originalItem
+	 * @return the new id
+	 */
+	private int addItem(int originalItem) {
+		if(originalItem >= this._newItems.length) {
+			int previousLength = this._newItems.length;
+			this._newItems = Arrays.copyOf(this._newItems, Math.max(originalItem + 1, previousLength * 2));
+			Arrays.fill(this._newItems, previousLength, this._newItems.length, -1);
+		}
+		if(this._newItems[originalItem] >= 0) {
+			throw new LogicException("Item " + originalItem + " renumbered twice");
+		}
+		if(this._size == this._originalItems.length) {
+			this._originalItems = Arrays.copyOf(this._originalItems, Math.max(16, this._size * 2));
+		}
+		this._newItems[originalItem] = this._size;
+		this._originalItems[this._size] = originalItem;
+		return this._size++;
+	}
+
+	public int size() {
+		return this._size;
+	}
+
+	/**
+	 * @param originalItem
+	 * @return New id of the item, a new one is given to the items unknown to the mapping
+	 */
+	public int newItem(int originalItem) {
+		if(originalItem < this._newItems.length && this._newItems[originalItem] >= 0) {
+			return this._newItems[originalItem];
+		}
+		return addItem(originalItem);
+	}
+
+	/**
+	 * @param newItem
+	 * @return Original id of the item
+	 */
+	public int originalItem(int newItem) {
+		if(newItem < 0 || newItem >= this._size) {
+			throw new LogicException("Unknown renumbered item " + newItem);
+		}
+		return this._originalItems[newItem];
+	}
+
+	/**
+	 * @param itemset
+	 * @return Copy of the itemset with the new ids, keeping its support, usage, multiplicity and label
+	 */
+	public KItemset renumber(KItemset itemset) {
+		int[] items = new int[itemset.size()];
+		for(int i = 0; i < itemset.size(); i++) {
+			items[i] = newItem(itemset.itemAt(i));
+		}
+		return copyWithItems(itemset, items);
+	}
+
+	/**
+	 * @param itemset Itemset with the new ids
+	 * @return Copy of the itemset with the original ids, keeping its support, usage, multiplicity and label
+	 */
+	public KItemset restore(KItemset itemset) {
+		int[] items = new int[itemset.size()];
+		for(int i = 0; i < itemset.size(); i++) {
+			items[i] = originalItem(itemset.itemAt(i));
+		}
+		return copyWithItems(itemset, items);
+	}
+
+	private static KItemset copyWithItems(KItemset itemset, int[] items) {
+		KItemset result = new KItemset(items, itemset.getSupport(), itemset.getUsage());
+		result.setMultiplicity(itemset.getMultiplicity());
+		result.setLabel(itemset.getLabel());
+		return result;
+	}
+
+	/**
+	 * @param transactions
+	 * @return The transactions with the new ids, in the same order
+	 */
+	public TransactionStore renumberTransactions(TransactionSet transactions) {
+		TransactionStore result = new TransactionStore(transactions.size(), (int) Math.ceil(transactions.transactionCount() * transactions.averageSize()));
+		int[] items = new int[16];
+		for(KItemset trans : transactions) {
+			if(trans.size() > items.length) {
+				items = new int[Math.max(trans.size(), items.length * 2)];
+			}
+			for(int i = 0; i < trans.size(); i++) {
+				items[i] = newItem(trans.itemAt(i));
+			}
+			result.addTransaction(items, trans.size(), trans.getMultiplicity());
+		}
+		result.trimToSize();
+		return result;
+	}
+
+	/**
+	 * @param codes Codes of a code table
+	 * @return The codes with the new ids, in the same order
+	 */
+	public ItemsetSet renumberCodes(ItemsetSet codes) {
+		ItemsetSet result = new ItemsetSet();
+		for(KItemset code : codes) {
+			result.add(renumber(code));
+		}
+		return result;
+	}
+
+	/**
+	 * @param codes Codes of a code table with the new ids
+	 * @return The codes with the original ids, in the same order
+	 */
+	public ItemsetSet restoreCodes(ItemsetSet codes) {
+		ItemsetSet result = new ItemsetSet();
+		for(KItemset code : codes) {
+			result.add(restore(code));
+		}
+		return result;
+	}
+
+	/**
+	 * Print the mapping, one line "original id" "new id" per item in the order of the new ids
+	 * @param filename
+	 */
+	public void printRenumbering(String filename) {
+		try {
+			PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(filename)));
+			for(int newItem = 0; newItem < this._size; newItem++) {
+				out.print(this._originalItems[newItem]);
+				out.print(' ');
+				out.println(newItem);
+			}
+			out.close();
+		} catch (IOException e) {
+			logger.error(e);
+		}
+	}
+
+	/**
+	 * @param filename File written by printRenumbering
+	 * @return
+	 */
+	public static ItemRenumbering readRenumbering(String filename) {
+		ItemRenumbering result = new ItemRenumbering();
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(filename));
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty()) {
+					continue;
+				}
+				StringTokenizer tokens = new StringTokenizer(line, " ");
+				int originalItem = Integer.parseInt(tokens.nextToken());
+				int newItem = Integer.parseInt(tokens.nextToken());
+				if(result.addItem(originalItem) != newItem) {
+					reader.close();
+					throw new LogicException("Renumbering file " + filename + " is not in the order of the new ids: " + line);
+				}
+			}
+			reader.close();
+		} catch (IOException e) {
+			logger.error(e);
+		}
+		return result;
+	}
+
+}
@@ -15,26 +15,68 @@ import com.irisa.swpatterns.data.AttributeIndex;
  * @author pmaillot
  *
  */
-public class ItemsetSet extends LinkedList<KItemset> {
+public class ItemsetSet extends LinkedList<KItemset> implements TransactionSet {
 
 //	protected HashMap<Integer, HashSet<KItemset>> itemItemsetIndex = new HashMap<Integer, HashSet<KItemset>>();
 	private BitSet _knownItemSet = new BitSet(); // An set bit at position i indicate the use of item i somewhere in the dataset
+	private HashMap<KItemset, KItemset> _collapsedIndex = null; // Not null if identical itemsets are collapsed into one 
 	
 	public ItemsetSet() {
 		super();
 	}
 	
-	public ItemsetSet(ItemsetSet is) {
+	/**
+	 * @param collapseDuplicates if true, adding with addItemset an itemset identical to an already present one only increases the multiplicity of the present one
+	 */
+	public ItemsetSet(boolean collapseDuplicates) {
 		this();
+		if(collapseDuplicates) {
+			this._collapsedIndex = new HashMap<KItemset, KItemset>();
+		}
+	}
+	
+	public ItemsetSet(ItemsetSet is) {
+		this(is.isCollapsingDuplicates());
 		for(KItemset code : is) {
 			addItemset(code);
 		}
 //		itemItemsetIndex = new HashMap<Integer, HashSet<KItemset>>(is.itemItemsetIndex);
 	}
 	
+	/**
+	 * @param transactions
+	 * @return the distinct transactions of the set, in order of first appearance, with their number of copies as multiplicity
+	 */
+	public static ItemsetSet collapseDuplicates(TransactionSet transactions) {
+		ItemsetSet result = new ItemsetSet(true);
+		for(KItemset trans : transactions) {
+			result.addItemset(trans);
+		}
+		return result;
+	}
+	
+	public boolean isCollapsingDuplicates() {
+		return this._collapsedIndex != null;
+	}
+	
+	/**
+	 * Add a copy of the itemset. 
+	 * If duplicates are collapsed and an identical itemset is present, its multiplicity is increased instead. Present itemsets must not be modified in that case.
+	 * @param auxCode
+	 */
 	public void addItemset(KItemset auxCode) {
+		if(this._collapsedIndex != null) {
+			KItemset present = this._collapsedIndex.get(auxCode);
+			if(present != null) {
+				present.setMultiplicity(present.getMultiplicity() + auxCode.getMultiplicity());
+				return;
+			}
+		}
 		KItemset newIs = new KItemset(auxCode);
 		super.add(newIs);
+		if(this._collapsedIndex != null) {
+			this._collapsedIndex.put(newIs, newIs);
+		}
 //		Iterator<Integer> itAux = auxCode.iterator();
 //		while(itAux.hasNext()) {
 //			int item = itAux.next();
@@ -51,6 +93,7 @@ public class ItemsetSet extends LinkedList<KItemset> {
 	/**
 	 * @return List of items used in this itemsetSet
 	 */
+	@Override
 	public List<Integer> knownItems() {
 		LinkedList<Integer> result = new LinkedList<Integer>();
 		
@@ -63,32 +106,47 @@ public class ItemsetSet extends LinkedList<KItemset> {
 		return result;
 	}
 	
+	@Override
+	public int transactionCount() {
+		int result = 0;
+		for( KItemset t : this) {
+			result += t.getMultiplicity();
+		}
+		return result;
+	}
+	
+	@Override
 	public double averageSize() {
-		int sumSize = 0;
+		long sumSize = 0;
+		int count = 0;
 		
 		for( KItemset t : this) {
-			sumSize += t.size();
+			sumSize += (long)t.size() * t.getMultiplicity();
+			count += t.getMultiplicity();
 		}
 		
-		return (double)sumSize/(double)this.size();
+		return (double)sumSize/(double)count;
 	}
 	
 	/**
 	 * Process the whole dataset
 	 * @return density value
 	 */
+	@Override
 	public double density() {
-		int sumSize = 0;
+		long sumSize = 0;
+		int count = 0;
 		BitSet itemset = new BitSet();
 		
 		for( KItemset t : this) {
-			sumSize += t.size();
+			sumSize += (long)t.size() * t.getMultiplicity();
+			count += t.getMultiplicity();
 			for( int item : t ) {
 				itemset.set(item);
 			}
 		}
 		
-		return (double)sumSize/((double)this.size()*(double)itemset.cardinality());
+		return (double)sumSize/((double)count*(double)itemset.cardinality());
 	}
 	
 	public String toString() {
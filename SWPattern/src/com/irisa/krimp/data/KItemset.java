@@ -1,27 +1,58 @@
 package com.irisa.krimp.data;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.apache.jena.ext.com.google.common.collect.Lists;
 
-public class KItemset extends HashSet<Integer> {
+/**
+ * Itemset backed by a sorted array of primitive items.
+ * Inclusion, substraction and intersection are done by merging the sorted arrays, no boxing or hashing is involved.
+ * Support and usage are kept as fields.
+ * A 64 bits signature, where each item sets one hashed bit, allows to reject most inclusion tests in one operation.
+ * @author pmaillot
+ *
+ */
+public class KItemset extends AbstractSet<Integer> {
+
+	private static final int[] EMPTY_ITEMS = new int[0];
+
+	private int[] _items = EMPTY_ITEMS; // Sorted, without duplicates, only the _size first cells are meaningful
+	private int _size = 0;
 	
 	private int _support = 0;
 	private String _label = "";
 	private int _usage = 0;
+	private int _multiplicity = 1; // Number of identical transactions represented by this one
+	
+	private long _signature = 0L; // OR of the signature bits of the items, meaningful if _signatureUpToDate
+	private boolean _signatureUpToDate = false;
 
 	public KItemset() {
 	}
 
 	public KItemset(Collection<? extends Integer> arg0) {
-		super(arg0);
 		if(arg0 instanceof KItemset) {
-			this._support = ((KItemset) arg0).getSupport();
-			this._usage = ((KItemset) arg0).getUsage();
+			KItemset kis = (KItemset) arg0;
+			this._items = Arrays.copyOf(kis._items, kis._size);
+			this._size = kis._size;
+			this._support = kis.getSupport();
+			this._usage = kis.getUsage();
+			this._multiplicity = kis.getMultiplicity();
+			this._signature = kis._signature;
+			this._signatureUpToDate = kis._signatureUpToDate;
+		} else {
+			this._items = new int[arg0.size()];
+			for(Integer item : arg0) {
+				this._items[this._size++] = item;
+			}
+			sortItems();
 		}
 	}
 	
@@ -30,17 +61,78 @@ public class KItemset extends HashSet<Integer> {
 	}
 	
 	public KItemset(Collection<? extends Integer> arg0, int supp, int usg) {
-		super(arg0);
+		this(arg0);
+		this._support = supp;
+		this._usage = usg;
+	}
+
+	/**
+	 * @param items Items of the itemset, in any order, duplicates are ignored. The array is copied.
+	 */
+	public KItemset(int[] items) {
+		this._items = Arrays.copyOf(items, items.length);
+		this._size = items.length;
+		sortItems();
+	}
+
+	public KItemset(int[] items, int supp, int usg) {
+		this(items);
 		this._support = supp;
 		this._usage = usg;
 	}
 
+	/**
+	 * @param sortedItems Array containing the items in ascending order, without duplicates, between from (inclusive) and to (exclusive). The range is copied.
+	 */
+	static KItemset fromSortedRange(int[] sortedItems, int from, int to) {
+		KItemset result = new KItemset();
+		result._items = Arrays.copyOfRange(sortedItems, from, to);
+		result._size = to - from;
+		return result;
+	}
+
+	/**
+	 * Replace the items of this itemset, reusing its array when large enough. Support, usage and label are kept.
+	 * @param sortedItems Array containing the items in ascending order, without duplicates, between from (inclusive) and to (exclusive). The range is copied.
+	 */
+	void setSortedRange(int[] sortedItems, int from, int to) {
+		this._size = 0;
+		ensureCapacity(to - from);
+		System.arraycopy(sortedItems, from, this._items, 0, to - from);
+		this._size = to - from;
+		this._signatureUpToDate = false;
+	}
+
 	protected KItemset(int initialCapacity) {
-		super(initialCapacity);
+		this._items = new int[initialCapacity];
 	}
 
+	/**
+	 * Kept from the HashSet implementation, the load factor is ignored
+	 */
 	public KItemset(int initialCapacity, float loadFactor) {
-		super(initialCapacity, loadFactor);
+		this(initialCapacity);
+	}
+
+	/**
+	 * Sort the _size first items and remove the duplicates
+	 */
+	private void sortItems() {
+		Arrays.sort(this._items, 0, this._size);
+		int newSize = 0;
+		for(int i = 0; i < this._size; i++) {
+			if(newSize == 0 || this._items[newSize-1] != this._items[i]) {
+				this._items[newSize++] = this._items[i];
+			}
+		}
+		this._size = newSize;
+		this._signatureUpToDate = false;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if(this._items.length < capacity) {
+			this._items = Arrays.copyOf(this._items, Math.max(capacity, this._items.length * 2));
+		}
 	}
 
 	public int getSupport() {
@@ -51,6 +143,292 @@ public class KItemset extends HashSet<Integer> {
 		this._support = supp;
 	}
 
+	@Override
+	public int size() {
+		return this._size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this._size == 0;
+	}
+
+	@Override
+	public void clear() {
+		this._size = 0;
+		this._signature = 0L;
+		this._signatureUpToDate = true;
+	}
+
+	/**
+	 * @param index
+	 * @return the index-th smallest item of the itemset
+	 */
+	public int itemAt(int index) {
+		if(index < 0 || index >= this._size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this._size);
+		}
+		return this._items[index];
+	}
+
+	/**
+	 * @return copy of the items, in ascending order
+	 */
+	public int[] getItemArray() {
+		return Arrays.copyOf(this._items, this._size);
+	}
+
+	public boolean contains(int item) {
+		return Arrays.binarySearch(this._items, 0, this._size, item) >= 0;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if(o instanceof Integer) {
+			return contains(((Integer) o).intValue());
+		}
+		return false;
+	}
+
+	public boolean add(int item) {
+		int pos = Arrays.binarySearch(this._items, 0, this._size, item);
+		if(pos >= 0) {
+			return false;
+		}
+		pos = -(pos + 1);
+		ensureCapacity(this._size + 1);
+		System.arraycopy(this._items, pos, this._items, pos + 1, this._size - pos);
+		this._items[pos] = item;
+		this._size++;
+		this._signature |= signatureBit(item);
+		return true;
+	}
+
+	@Override
+	public boolean add(Integer item) {
+		return add(item.intValue());
+	}
+
+	public boolean remove(int item) {
+		int pos = Arrays.binarySearch(this._items, 0, this._size, item);
+		if(pos < 0) {
+			return false;
+		}
+		removeAt(pos);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if(o instanceof Integer) {
+			return remove(((Integer) o).intValue());
+		}
+		return false;
+	}
+
+	private void removeAt(int pos) {
+		System.arraycopy(this._items, pos + 1, this._items, pos, this._size - pos - 1);
+		this._size--;
+		this._signatureUpToDate = false;
+	}
+
+	/**
+	 * @param item
+	 * @return The bit set by item in the signatures
+	 */
+	public static long signatureBit(int item) {
+		return 1L << signatureBitIndex(item);
+	}
+
+	/**
+	 * @param item
+	 * @return Position, between 0 and 63, of the bit set by item in the signatures, chosen by Fibonacci hashing
+	 */
+	public static int signatureBitIndex(int item) {
+		return (item * 0x9E3779B9) >>> 26;
+	}
+
+	/**
+	 * Computed on first call, then kept up to date by the in place operations
+	 * @return 64 bits signature of the itemset, the OR of the signature bits of its items
+	 */
+	public long getSignature() {
+		if(! this._signatureUpToDate) {
+			this._signature = 0L;
+			for(int i = 0; i < this._size; i++) {
+				this._signature |= signatureBit(this._items[i]);
+			}
+			this._signatureUpToDate = true;
+		}
+		return this._signature;
+	}
+
+	/**
+	 * Single operation test, false positives are possible but not false negatives
+	 * @param kis
+	 * @return false if kis is surely not included in this itemset
+	 */
+	public boolean mayContainAll(KItemset kis) {
+		return (kis.getSignature() & ~this.getSignature()) == 0L;
+	}
+
+	/**
+	 * Merge-based inclusion test
+	 * @param kis
+	 * @return true if every item of kis is in this itemset
+	 */
+	public boolean containsAll(KItemset kis) {
+		if(kis._size > this._size) {
+			return false;
+		}
+		int i = 0;
+		for(int j = 0; j < kis._size; j++) {
+			int item = kis._items[j];
+			while(i < this._size && this._items[i] < item) {
+				i++;
+			}
+			if(i == this._size || this._items[i] != item) {
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if(c instanceof KItemset) {
+			return containsAll((KItemset) c);
+		}
+		return super.containsAll(c);
+	}
+
+	/**
+	 * In place merge-based removal of the items of kis
+	 * @param kis
+	 * @return true if this itemset has been modified
+	 */
+	public boolean removeAll(KItemset kis) {
+		int newSize = 0;
+		long newSignature = 0L;
+		int j = 0;
+		for(int i = 0; i < this._size; i++) {
+			int item = this._items[i];
+			while(j < kis._size && kis._items[j] < item) {
+				j++;
+			}
+			if(j == kis._size || kis._items[j] != item) {
+				this._items[newSize++] = item;
+				newSignature |= signatureBit(item);
+			}
+		}
+		boolean modified = newSize != this._size;
+		this._size = newSize;
+		this._signature = newSignature;
+		this._signatureUpToDate = true;
+		return modified;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if(c instanceof KItemset) {
+			return removeAll((KItemset) c);
+		}
+		return super.removeAll(c);
+	}
+
+	/**
+	 * In place merge-based intersection with kis
+	 * @param kis
+	 * @return true if this itemset has been modified
+	 */
+	public boolean retainAll(KItemset kis) {
+		int newSize = 0;
+		long newSignature = 0L;
+		int j = 0;
+		for(int i = 0; i < this._size; i++) {
+			int item = this._items[i];
+			while(j < kis._size && kis._items[j] < item) {
+				j++;
+			}
+			if(j < kis._size && kis._items[j] == item) {
+				this._items[newSize++] = item;
+				newSignature |= signatureBit(item);
+			}
+		}
+		boolean modified = newSize != this._size;
+		this._size = newSize;
+		this._signature = newSignature;
+		this._signatureUpToDate = true;
+		return modified;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		if(c instanceof KItemset) {
+			return retainAll((KItemset) c);
+		}
+		return super.retainAll(c);
+	}
+
+	/**
+	 * Merge-based union with kis
+	 * @param kis
+	 * @return true if this itemset has been modified
+	 */
+	public boolean addAll(KItemset kis) {
+		int[] merged = new int[this._size + kis._size];
+		int i = 0, j = 0, k = 0;
+		while(i < this._size && j < kis._size) {
+			if(this._items[i] < kis._items[j]) {
+				merged[k++] = this._items[i++];
+			} else if(this._items[i] > kis._items[j]) {
+				merged[k++] = kis._items[j++];
+			} else {
+				merged[k++] = this._items[i++];
+				j++;
+			}
+		}
+		while(i < this._size) {
+			merged[k++] = this._items[i++];
+		}
+		while(j < kis._size) {
+			merged[k++] = kis._items[j++];
+		}
+		boolean modified = k != this._size;
+		this._items = merged;
+		this._size = k;
+		this._signature |= kis._signature;
+		this._signatureUpToDate = this._signatureUpToDate && kis._signatureUpToDate;
+		return modified;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Integer> c) {
+		if(c instanceof KItemset) {
+			return addAll((KItemset) c);
+		}
+		return super.addAll(c);
+	}
+
+	/**
+	 * @param kis
+	 * @return true if the two itemsets share at least one item
+	 */
+	public boolean intersects(KItemset kis) {
+		int i = 0, j = 0;
+		while(i < this._size && j < kis._size) {
+			if(this._items[i] < kis._items[j]) {
+				i++;
+			} else if(this._items[i] > kis._items[j]) {
+				j++;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public KItemset intersection(KItemset code) {
 		KItemset thisCopy = new KItemset(this);
 		thisCopy.retainAll(code);
@@ -62,6 +440,66 @@ public class KItemset extends HashSet<Integer> {
 		thisCopy.removeAll(code);
 		return thisCopy;
 	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			private int _next = 0;
+			private boolean _canRemove = false;
+
+			@Override
+			public boolean hasNext() {
+				return _next < _size;
+			}
+
+			@Override
+			public Integer next() {
+				if(_next >= _size) {
+					throw new NoSuchElementException();
+				}
+				_canRemove = true;
+				return _items[_next++];
+			}
+
+			@Override
+			public void remove() {
+				if(! _canRemove) {
+					throw new IllegalStateException();
+				}
+				_canRemove = false;
+				removeAt(--_next);
+			}
+		};
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 0;
+		for(int i = 0; i < this._size; i++) {
+			result += this._items[i];
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(o == this) {
+			return true;
+		}
+		if(o instanceof KItemset) {
+			KItemset kis = (KItemset) o;
+			if(this._size != kis._size) {
+				return false;
+			}
+			for(int i = 0; i < this._size; i++) {
+				if(this._items[i] != kis._items[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return super.equals(o);
+	}
 	
 	public boolean alphabeticalEqual(KItemset kis) {
 		boolean result = false;
@@ -113,6 +551,17 @@ public class KItemset extends HashSet<Integer> {
 		this._usage = usage;
 	}
 
+	/**
+	 * @return Number of identical transactions represented by this itemset, 1 unless duplicates have been collapsed
+	 */
+	public int getMultiplicity() {
+		return _multiplicity;
+	}
+
+	public void setMultiplicity(int multiplicity) {
+		this._multiplicity = multiplicity;
+	}
+
 	public String getLabel() {
 		return _label;
 	}
@@ -0,0 +1,43 @@
+package com.irisa.krimp.data;
+
+import java.util.List;
+
+/**
+ * Read-only access to a set of transactions.
+ * Implemented by ItemsetSet and by the compact TransactionStore, so that the measures and indexes can run on both.
+ * @author pmaillot
+ *
+ */
+public interface TransactionSet extends Iterable<KItemset> {
+
+	/**
+	 * @return Number of transactions, identical transactions collapsed into one count once
+	 */
+	public int size();
+
+	/**
+	 * @return Number of transactions, counting the multiplicity of each one
+	 */
+	public int transactionCount();
+
+	/**
+	 * Transactions are numbered from 0 in iteration order. 
+	 * Random access is linear for ItemsetSet, prefer the iterator when going through the whole set.
+	 * @param index
+	 * @return the index-th transaction
+	 */
+	public KItemset get(int index);
+
+	/**
+	 * @return List of items used in this set of transactions
+	 */
+	public List<Integer> knownItems();
+
+	public double averageSize();
+
+	/**
+	 * @return density value
+	 */
+	public double density();
+
+}
@@ -0,0 +1,296 @@
+package com.irisa.krimp.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Compressed sparse row storage of a set of transactions.
+ * The items of all the transactions are stored one after the other in a single array, sorted inside each transaction,
+ * the transaction of index i occupies the cells from _offsets[i] (inclusive) to _offsets[i+1] (exclusive).
+ * Transactions are only materialized as KItemset when accessed through get or the iterator.
+ * Collapsed duplicates (KItemset multiplicity) are kept in a parallel array.
+ * @author pmaillot
+ *
+ */
+public class TransactionStore implements TransactionSet {
+
+	private int[] _offsets;
+	private int[] _items;
+	private int[] _multiplicities = null; // Number of copies of each transaction, null while they are all 1
+	private int _size = 0;
+	private int _transactionCount = 0;
+	private BitSet _knownItemSet = new BitSet(); // An set bit at position i indicate the use of item i somewhere in the dataset
+
+	public TransactionStore() {
+		this(16, 64);
+	}
+
+	/**
+	 * @param transactionCapacity Expected number of transactions
+	 * @param itemCapacity Expected total number of items in all transactions
+	 */
+	public TransactionStore(int transactionCapacity, int itemCapacity) {
+		this._offsets = new int[Math.max(transactionCapacity, 1) + 1];
+		this._items = new int[Math.max(itemCapacity, 1)];
+	}
+
+	/**
+	 * Copy of the transactions, keeping their multiplicities
+	 * @param transactions
+	 */
+	public TransactionStore(TransactionSet transactions) {
+		this(transactions.size(), itemCount(transactions));
+		for(KItemset trans : transactions) {
+			addTransaction(trans);
+		}
+	}
+
+	/**
+	 * @param transactions
+	 * @return Number of items stored for the transactions, collapsed identical transactions being stored once
+	 */
+	private static int itemCount(TransactionSet transactions) {
+		if(transactions instanceof TransactionStore) {
+			TransactionStore store = (TransactionStore) transactions;
+			return store._offsets[store._size];
+		}
+		int result = 0;
+		for(KItemset trans : transactions) {
+			result += trans.size();
+		}
+		return result;
+	}
+
+	public void addTransaction(KItemset trans) {
+		int start = this._offsets[this._size];
+		ensureCapacity(this._size + 1, start + trans.size());
+		for(int i = 0; i < trans.size(); i++) {
+			int item = trans.itemAt(i);
+			this._items[start + i] = item;
+			this._knownItemSet.set(item);
+		}
+		setMultiplicity(this._size, trans.getMultiplicity());
+		this._size++;
+		this._offsets[this._size] = start + trans.size();
+	}
+
+	/**
+	 * @param items Items of the new transaction, in any order, duplicates are ignored. Only the length first cells are read, the array is not modified.
+	 * @param length
+	 */
+	public void addTransaction(int[] items, int length) {
+		addTransaction(items, length, 1);
+	}
+
+	/**
+	 * @param items Items of the new transaction, in any order, duplicates are ignored. Only the length first cells are read, the array is not modified.
+	 * @param length
+	 * @param multiplicity Number of identical transactions represented by this one
+	 */
+	public void addTransaction(int[] items, int length, int multiplicity) {
+		int start = this._offsets[this._size];
+		ensureCapacity(this._size + 1, start + length);
+		System.arraycopy(items, 0, this._items, start, length);
+		Arrays.sort(this._items, start, start + length);
+		int end = start;
+		for(int i = start; i < start + length; i++) {
+			if(end == start || this._items[end-1] != this._items[i]) {
+				this._items[end++] = this._items[i];
+				this._knownItemSet.set(this._items[i]);
+			}
+		}
+		setMultiplicity(this._size, multiplicity);
+		this._size++;
+		this._offsets[this._size] = end;
+	}
+
+	private void ensureCapacity(int nbTransactions, int nbItems) {
+		if(nbTransactions + 1 > this._offsets.length) {
+			this._offsets = Arrays.copyOf(this._offsets, Math.max(nbTransactions + 1, this._offsets.length * 2));
+		}
+		if(nbItems > this._items.length) {
+			this._items = Arrays.copyOf(this._items, Math.max(nbItems, this._items.length * 2));
+		}
+		if(this._multiplicities != null && nbTransactions > this._multiplicities.length) {
+			this._multiplicities = Arrays.copyOf(this._multiplicities, this._offsets.length - 1);
+		}
+	}
+
+	private void setMultiplicity(int index, int multiplicity) {
+		if(multiplicity != 1 && this._multiplicities == null) {
+			this._multiplicities = new int[this._offsets.length - 1];
+			Arrays.fill(this._multiplicities, 1);
+		}
+		if(this._multiplicities != null) {
+			this._multiplicities[index] = multiplicity;
+		}
+		this._transactionCount += multiplicity;
+	}
+
+	/**
+	 * @param index
+	 * @return Number of identical transactions represented by the index-th one
+	 */
+	public int getMultiplicity(int index) {
+		checkIndex(index);
+		if(this._multiplicities == null) {
+			return 1;
+		}
+		return this._multiplicities[index];
+	}
+
+	/**
+	 * Release the unused capacity once every transaction has been added
+	 */
+	public void trimToSize() {
+		this._offsets = Arrays.copyOf(this._offsets, this._size + 1);
+		this._items = Arrays.copyOf(this._items, this._offsets[this._size]);
+		if(this._multiplicities != null) {
+			this._multiplicities = Arrays.copyOf(this._multiplicities, this._size);
+		}
+	}
+
+	@Override
+	public int size() {
+		return this._size;
+	}
+
+	@Override
+	public int transactionCount() {
+		return this._transactionCount;
+	}
+
+	public boolean isEmpty() {
+		return this._size == 0;
+	}
+
+	/**
+	 * @return Total number of items in all transactions
+	 */
+	public int itemCount() {
+		return this._offsets[this._size];
+	}
+
+	/**
+	 * @param index
+	 * @return Position in getItemArray() of the first item of the index-th transaction
+	 */
+	public int start(int index) {
+		checkIndex(index);
+		return this._offsets[index];
+	}
+
+	/**
+	 * @param index
+	 * @return Position in getItemArray() following the last item of the index-th transaction
+	 */
+	public int end(int index) {
+		checkIndex(index);
+		return this._offsets[index + 1];
+	}
+
+	/**
+	 * @param index
+	 * @return Number of items of the index-th transaction
+	 */
+	public int transactionSize(int index) {
+		return end(index) - start(index);
+	}
+
+	/**
+	 * @return The array containing the items of all the transactions, between start(i) and end(i) for the i-th. Must not be modified.
+	 */
+	public int[] getItemArray() {
+		return this._items;
+	}
+
+	private void checkIndex(int index) {
+		if(index < 0 || index >= this._size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this._size);
+		}
+	}
+
+	@Override
+	public KItemset get(int index) {
+		KItemset result = KItemset.fromSortedRange(this._items, start(index), end(index));
+		result.setMultiplicity(getMultiplicity(index));
+		return result;
+	}
+
+	/**
+	 * Allocation-free access to a transaction
+	 * @param index
+	 * @param trans Receives the items and multiplicity of the index-th transaction, its previous content is replaced
+	 */
+	public void get(int index, KItemset trans) {
+		trans.setSortedRange(this._items, start(index), end(index));
+		trans.setMultiplicity(getMultiplicity(index));
+	}
+
+	@Override
+	public Iterator<KItemset> iterator() {
+		return new Iterator<KItemset>() {
+			private int _next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return _next < _size;
+			}
+
+			@Override
+			public KItemset next() {
+				if(_next >= _size) {
+					throw new NoSuchElementException();
+				}
+				return get(_next++);
+			}
+		};
+	}
+
+	@Override
+	public List<Integer> knownItems() {
+		LinkedList<Integer> result = new LinkedList<Integer>();
+		for(int item = this._knownItemSet.nextSetBit(0); item >= 0; item = this._knownItemSet.nextSetBit(item + 1)) {
+			result.add(item);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Total number of items in all transactions, counting the multiplicity of each one
+	 */
+	private long weightedItemCount() {
+		if(this._multiplicities == null) {
+			return itemCount();
+		}
+		long result = 0;
+		for(int i = 0; i < this._size; i++) {
+			result += (long)(this._offsets[i+1] - this._offsets[i]) * this._multiplicities[i];
+		}
+		return result;
+	}
+
+	@Override
+	public double averageSize() {
+		return (double)weightedItemCount()/(double)this._transactionCount;
+	}
+
+	@Override
+	public double density() {
+		return (double)weightedItemCount()/((double)this._transactionCount*(double)this._knownItemSet.cardinality());
+	}
+
+	public String toString() {
+		StringBuilder r = new StringBuilder();
+		for(KItemset trans : this) {
+			r.append(trans.toString());
+			r.append('\n');
+		}
+		return r.toString();
+	}
+
+}
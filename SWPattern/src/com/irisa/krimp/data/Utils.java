@@ -7,6 +7,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -82,6 +83,54 @@ public class Utils {
 		return result;
 	}
 	
+	/**
+	 * Read a transaction file directly into a compact TransactionStore, without creating an object per transaction.
+	 * Support and usage annotations are ignored.
+	 * @param filename
+	 * @return
+	 */
+	public static TransactionStore readTransactionStore(String filename) {
+		TransactionStore result = new TransactionStore();
+		int[] lineItems = new int[64];
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(filename));
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty()) {
+					continue;
+				}
+				int nbItems = 0;
+				boolean skipNext = false;
+				StringTokenizer tokens = new StringTokenizer(line, " ");
+				while(tokens.hasMoreTokens()) {
+					String token = tokens.nextToken();
+					if(skipNext) {
+						skipNext = false;
+					} else if(token.equals("#SUP:") || token.equals("#USG:")) {
+						skipNext = true;
+					} else {
+						try {
+							if(nbItems == lineItems.length) {
+								lineItems = Arrays.copyOf(lineItems, nbItems * 2);
+							}
+							lineItems[nbItems] = Integer.parseInt(token);
+							nbItems++;
+						} catch(NumberFormatException e) {
+							logger.fatal(filename + " " + line + ": " + token, e);
+						}
+					}
+				}
+				result.addTransaction(lineItems, nbItems);
+			}
+			reader.close();
+		} catch (IOException e) {
+			logger.fatal(e);
+		}
+		result.trimToSize();
+
+		return result;
+	}
+	
 	public ItemsetSet readCodeTableCodes(String filename) {
 		return readItemsetSetFile(filename);
 	}
@@ -154,7 +203,7 @@ public class Utils {
 	 * @param transactions
 	 * @param output
 	 */
-	public static void printItemsetSet(ItemsetSet transactions, String output) {
+	public static void printItemsetSet(TransactionSet transactions, String output) {
 		printItemsetSet(transactions, output, false, true);
 	}
 
@@ -172,11 +221,11 @@ public class Utils {
 	 * @param transactions
 	 * @param output
 	 */
-	protected static void printItemsetSet(ItemsetSet transactions, String output, boolean noSupport) {
+	protected static void printItemsetSet(TransactionSet transactions, String output, boolean noSupport) {
 		printItemsetSet(transactions, output, noSupport, true);
 	}
 	
-	protected static void printItemsetSet(ItemsetSet transactions, String output, boolean noSupport, boolean noUsage) {
+	protected static void printItemsetSet(TransactionSet transactions, String output, boolean noSupport, boolean noUsage) {
 
 		try {
 			PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(output)));
@@ -186,29 +235,32 @@ public class Utils {
 			Iterator<KItemset> itResult = transactions.iterator();
 			while(itResult.hasNext()) {
 				KItemset resultLine = itResult.next();
-				// Ecriture des attributs types
-				resultLine.forEach(new Consumer<Integer>() {
-
-					@Override
-					public void accept(Integer item) {
-						try {
-							printer.print(item);
-						} catch (IOException e) {
-							logger.error(e);
+				// Collapsed identical transactions are written as many times as their multiplicity
+				for(int copy = 0; copy < resultLine.getMultiplicity(); copy++) {
+					// Ecriture des attributs types
+					resultLine.forEach(new Consumer<Integer>() {
+
+						@Override
+						public void accept(Integer item) {
+							try {
+								printer.print(item);
+							} catch (IOException e) {
+								logger.error(e);
+							}
 						}
-					}
 
-				});
+					});
 
-				if(! noSupport) {
-					printer.print((Object)"#SUP:");
-					printer.print(resultLine.getSupport());
-				}
-				if(! noUsage) {
-					printer.print((Object)"#USG:");
-					printer.print(resultLine.getUsage());
+					if(! noSupport) {
+						printer.print((Object)"#SUP:");
+						printer.print(resultLine.getSupport());
+					}
+					if(! noUsage) {
+						printer.print((Object)"#USG:");
+						printer.print(resultLine.getUsage());
+					}
+					printer.println();
 				}
-				printer.println();
 			}
 
 			printer.close();
@@ -218,7 +270,7 @@ public class Utils {
 		}
 	}
 
-	public static void printTransactions(ItemsetSet transactions, String output) {
+	public static void printTransactions(TransactionSet transactions, String output) {
 		printItemsetSet(transactions, output, true);
 	}
 
@@ -0,0 +1,150 @@
+package com.irisa.swpatterns.measures;
+
+import java.util.HashMap;
+
+import com.irisa.krimp.CodeTableSnapshot;
+import com.irisa.krimp.data.KItemset;
+
+/**
+ * Code lengths of a code table, frozen once its usages are fixed.
+ * Lengths are read by position of the code in the code table, and by item for the standard code table, without any search or logarithm.
+ * The standard code table is the one derived from the code table, giving to each item the sum of the usages of the codes containing it, its lengths are only computed if needed.
+ * @author pmaillot
+ *
+ */
+class CodeLengthTable {
+
+	private KItemset[] _codes;
+	private long _usageTotal;
+	private int[] _codeUsages; // Usage of each code
+	private int[] _usages; // Usage of each code, the one of the first equal code when it is 0
+	private double[] _codeLengths; // L(code_CT(X)) of each code
+	private double[] _standardItemLengths = null; // L(code_ST({i})) of each item i, infinite for items appearing in no used code, built on the first use
+	private HashMap<KItemset, Integer> _positions = new HashMap<KItemset, Integer>(); // Position of the first occurrence of each code
+
+	/**
+	 * @param codes Codes of the code table
+	 * @param codeUsages Usage of each code, the usages carried by the codes are ignored
+	 * @param usageTotal Usage total of the code table, not necessarily the sum of the usages of the codes
+	 */
+	CodeLengthTable(KItemset[] codes, int[] codeUsages, long usageTotal) {
+		this(codes, codeUsages, usageTotal, null);
+	}
+
+	/**
+	 * @param codes Codes of the code table
+	 * @param codeUsages Usage of each code, the usages carried by the codes are ignored
+	 * @param usageTotal Usage total of the code table, not necessarily the sum of the usages of the codes
+	 * @param standardItemLengths Lengths of the items in the standard code table derived from these codes and usages if already known, null otherwise
+	 */
+	CodeLengthTable(KItemset[] codes, int[] codeUsages, long usageTotal, double[] standardItemLengths) {
+		this._codes = codes;
+		this._codeUsages = codeUsages;
+		this._usageTotal = usageTotal;
+		this._standardItemLengths = standardItemLengths;
+		this._usages = new int[codes.length];
+		this._codeLengths = new double[codes.length];
+		for(int iCode = 0; iCode < codes.length; iCode++) {
+			this._positions.putIfAbsent(codes[iCode], iCode);
+		}
+
+		for(int iCode = 0; iCode < codes.length; iCode++) {
+			this._usages[iCode] = codeUsages[iCode];
+			if(codeUsages[iCode] == 0) { // Same as the search of the code in the code table, the first equal code is found
+				this._usages[iCode] = codeUsages[this._positions.get(codes[iCode])];
+			}
+			this._codeLengths[iCode] = - Math.log((double) this._usages[iCode] / (double) usageTotal);
+		}
+	}
+
+	/**
+	 * @param code
+	 * @return Position of the first code equal to code, -1 if there is none
+	 */
+	int position(KItemset code) {
+		Integer result = this._positions.get(code);
+		if(result == null) {
+			return -1;
+		}
+		return result;
+	}
+
+	/**
+	 * @param iCode
+	 * @return P(X|D) for the iCode-th code X
+	 */
+	double probability(int iCode) {
+		return (double) this._usages[iCode] / (double) this._usageTotal;
+	}
+
+	/**
+	 * @param iCode
+	 * @return L(code_CT(X)) for the iCode-th code X
+	 */
+	double codeLength(int iCode) {
+		return this._codeLengths[iCode];
+	}
+
+	/**
+	 * @param code Any itemset. If its usage is 0, the usage of the equal code in the code table is used.
+	 * @return P(X|D)
+	 */
+	double probability(KItemset code) {
+		if(code.getUsage() == 0) {
+			int iCode = position(code);
+			return (iCode < 0) ? 0.0 : probability(iCode);
+		}
+		return (double) code.getUsage() / (double) this._usageTotal;
+	}
+
+	/**
+	 * @param code Any itemset. If its usage is 0, the usage of the equal code in the code table is used.
+	 * @return L(code_CT(X))
+	 */
+	double codeLength(KItemset code) {
+		if(code.getUsage() == 0) {
+			int iCode = position(code);
+			return (iCode < 0) ? Double.POSITIVE_INFINITY : codeLength(iCode);
+		}
+		return - Math.log((double) code.getUsage() / (double) this._usageTotal);
+	}
+
+	/**
+	 * @param code
+	 * @return L(code_ST(X)), sum of the lengths of its items in the standard code table
+	 */
+	double standardCodeLength(KItemset code) {
+		if(this._standardItemLengths == null) {
+			this._standardItemLengths = CodeTableSnapshot.standardItemLengths(this._codes, this._codeUsages);
+		}
+		double result = 0.0;
+		for(int i = 0; i < code.size(); i++) {
+			int item = code.itemAt(i);
+			if(item < this._standardItemLengths.length) {
+				result += this._standardItemLengths[item];
+			} else {
+				result += Double.POSITIVE_INFINITY;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * L(CT|D)
+	 * @param standard true if the code table is a standard code table, its codes have no length in the standard code table
+	 * @return
+	 */
+	double codeTableCodeLength(boolean standard) {
+		double result = 0.0;
+		for(int iCode = 0; iCode < this._codes.length; iCode++) {
+			if(this._codeUsages[iCode] != 0) {
+				result += this._codeLengths[iCode];
+				if(! standard) {
+					result += standardCodeLength(this._codes[iCode]);
+				}
+			}
+		}
+		return result;
+	}
+
+}
@@ -1,20 +1,41 @@
 package com.irisa.swpatterns.measures;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
-import java.util.Optional;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import com.irisa.exception.LogicException;
 import com.irisa.jenautils.Couple;
 import com.irisa.krimp.CodeTable;
+import com.irisa.krimp.CodeTableSnapshot;
+import com.irisa.krimp.cover.BitmapCover;
+import com.irisa.krimp.cover.CoverEngine;
+import com.irisa.krimp.cover.InvertedIndexCover;
+import com.irisa.krimp.cover.LinearCover;
+import com.irisa.krimp.cover.NaiveCover;
+import com.irisa.krimp.cover.PrefixSharingCover;
+import com.irisa.krimp.cover.TrieCover;
+import com.irisa.krimp.cover.VerticalCover;
+import com.irisa.krimp.data.CompressedBitmap;
+import com.irisa.krimp.data.DataIndexes;
 import com.irisa.krimp.data.ItemsetSet;
 import com.irisa.krimp.data.KItemset;
+import com.irisa.krimp.data.TransactionSet;
+import com.irisa.krimp.data.TransactionStore;
 import com.irisa.krimp.data.Utils;
 import org.apache.log4j.Logger;
 
 /**
  * Represents one codification measure of a transaction set using one codetable or a codetable by itself.
- * The codetable is copied, the transactions are not
+ * Neither the codetable nor the transactions are copied: the measure reads a frozen snapshot of the codetable, shared with the other measures of the same codetable,
+ * and keeps its own usages and the codes it adds (singletons of uncovered items, Laplace smoothing).
  * @author pmaillot
  *
  */
@@ -22,113 +43,229 @@ public class CodificationMeasure {
 	
 	private static Logger logger = Logger.getLogger(CodificationMeasure.class);
 
-	private ItemsetSet _transactions = null;
-	private CodeTable _codetable = null;
+	private TransactionSet _transactions = null;
+	private DataIndexes _dataIndexes = null; // Transaction bitmaps of the items, built on the first vertical cover if not given
 	
-	public CodificationMeasure(final ItemsetSet transactions, final CodeTable codetable) {
+	/**
+	 * Algorithms available to compute the cover of a transaction. They all give the same covers.
+	 */
+	public enum CoverStrategy {
+		AUTO, // Chosen for each run from the statistics of the transactions and the size of the code table, see selectCoverStrategy()
+		NAIVE, // Reference algorithm of the KRIMP paper, rebuilding the rest of the transaction after each code used
+		LINEAR, // Scan of the whole code table for each transaction
+		BITMAP, // Scan of the whole code table using word-packed bitmaps, for dense item universes
+		INVERTED_INDEX, // Only the codes found in the item to codes index of the transaction items are visited, for large code tables
+		TRIE, // Only the codes found by walking the prefix tree of the code table with the transaction items are visited, for large code tables sharing long prefixes
+		VERTICAL, // All the transactions are covered at once code by code, with word-parallel operations on the compressed transaction bitmaps of the items, for dense datasets
+		PREFIX_SHARING // The transactions are sorted by their items in cover order and each cover resumes the previous one from the first code where they differ, for datasets of near-identical transactions
+	}
+	
+	private static final int PARALLEL_CHUNK_SIZE = 512; // Number of transactions covered by each task of a parallel cover
+	
+	// Thresholds of the automatic choice of the cover algorithm
+	private static final double AUTO_VERTICAL_MIN_DENSITY = 0.2; // Minimal density of the transactions for the VERTICAL cover
+	private static final int AUTO_VERTICAL_MIN_TRANSACTIONS = 1024; // Minimal number of distinct transactions for the VERTICAL cover, below the bitmaps do not pay
+	private static final double AUTO_INDEXED_MIN_CODES_PER_ITEM = 32.0; // Minimal number of codes per item of the average transaction for the INVERTED_INDEX cover
+	private static final int AUTO_BITMAP_MAX_ITEMS = 256; // Maximal number of items for the BITMAP cover
+	
+	private CoverStrategy _coverStrategy = CoverStrategy.AUTO;
+	private CoverStrategy _selectedCoverStrategy = null; // Algorithm used by the covers, null until chosen when _coverStrategy is AUTO
+	private boolean _parallelCover = false;
+	private KItemset[] _coverCodes = null; // Codes in cover order, those of the snapshot followed by the ones added by the measure. Never modified, replaced when codes are added.
+	private int[] _usages = null; // Usage of each code of _coverCodes in this measure
+	private long _usageTotal = 0;
+	private CodeTableSnapshot _snapshot = null; // Snapshot of the measured codetable
+	private boolean _snapshotUsages = false; // Set true while the codes and usages are those of the snapshot, whose standard code table lengths can then be reused
+	private ThreadLocal<Coverer> _coverers = null; // Cover algorithm of each thread, built from _coverCodes on the first cover
+	private CodeLengthTable _codeLengths = null; // Built from _coverCodes once the usages are fixed
+	
+	public CodificationMeasure(final TransactionSet transactions, final CodeTable codetable) {
+		this(transactions, codetable.getSnapshot());
+	}
+	
+	public CodificationMeasure(final CodeTable codetable) {
+		this(codetable.getSnapshot());
+	}
+	
+	public CodificationMeasure(final TransactionSet transactions, final CodeTableSnapshot codetable) {
 		this.setTransactions(transactions);
 		this.setCodetable(codetable);
 	}
 	
-	public CodificationMeasure(final CodeTable codetable) {
+	public CodificationMeasure(final CodeTableSnapshot codetable) {
 		this.setCodetable(codetable);
 	}
 
+	/**
+	 * @return A new code table containing copies of the codes of the measure with their usages in the measure
+	 */
 	public CodeTable getCodetable() {
-		return _codetable;
+		ItemsetSet codes = new ItemsetSet();
+		for (int iCode = 0; iCode < this._coverCodes.length; iCode++) {
+			KItemset code = new KItemset(this._coverCodes[iCode]);
+			code.setUsage(this._usages[iCode]);
+			codes.add(code);
+		}
+		return new CodeTable(codes);
+	}
+
+	public void setCodetable(CodeTable codetable) {
+		this.setCodetable(codetable.getSnapshot());
 	}
 
-	public void setCodetable(CodeTable _codetable) {
-		this._codetable = new CodeTable(new ItemsetSet(_codetable.getCodes()));
+	/**
+	 * @param codetable Snapshot of the measured codetable, its codes are covered in standard cover order even if it is not in this order
+	 */
+	public void setCodetable(CodeTableSnapshot codetable) {
+		this._snapshot = codetable.inCoverOrder();
+		this._snapshotUsages = true;
+		this._coverCodes = this._snapshot.getCodes();
+		this._usages = this._snapshot.getUsages();
+		this.recomputeUsageTotal();
+		this.invalidateCoverStrategy();
 	}
 
-	public ItemsetSet getTransactions() {
+	public TransactionSet getTransactions() {
 		return _transactions;
 	}
 
-	public void setTransactions(ItemsetSet _transactions) {
+	public void setTransactions(TransactionSet _transactions) {
 		this._transactions = _transactions;
+		this._dataIndexes = null;
+		this.invalidateCoverStrategy();
 	}
 
 	/**
-	 * For code X, this is P(X |D)
-	 * @param code
-	 * @return
+	 * @return Indexes of the transactions, null if no VERTICAL cover has built them and none were given
 	 */
-	private static double probabilisticDistrib(CodeTable ct, KItemset code) {
-		int codeUsage = code.getUsage();
-		if(codeUsage == 0 && ct.contains(code)) {
-			try { // Using a bit of code using java8 and lambda stuff found on the web
-			Optional<KItemset> value = ct.getCodes()
-	            .stream()
-	            .filter(a -> a.equals(code))
-	            .findFirst();
-			codeUsage = value.get().getUsage();
-			} catch(NoSuchElementException e) {
-				logger.error("Unable to retrieve probabilistic distribution of " + code +  " from the codetable.");
+	public DataIndexes getDataIndexes() {
+		return this._dataIndexes;
+	}
+
+	/**
+	 * Give the indexes of the transactions to the VERTICAL cover, to share them between measures of the same transactions
+	 * @param index Indexes built from the transactions of the measure
+	 */
+	public void setDataIndexes(DataIndexes index) {
+		this._dataIndexes = index;
+	}
+
+	public CoverStrategy getCoverStrategy() {
+		return _coverStrategy;
+	}
+
+	/**
+	 * Choose the algorithm used during the cover, AUTO by default. All give the same covers.
+	 * BITMAP is worth it when items are densely numbered from 0 (Property and PropertyAndType encodings), INVERTED_INDEX and TRIE when the code table is large compared to the transactions.
+	 * PREFIX_SHARING is worth it when many transactions differ only by a few items, as the individuals of a same class.
+	 * @param coverStrategy
+	 */
+	public void setCoverStrategy(CoverStrategy coverStrategy) {
+		this._coverStrategy = coverStrategy;
+		this.invalidateCoverStrategy();
+	}
+	
+	/**
+	 * @return The algorithm used by the covers, the one chosen from the transactions and codes if the strategy is AUTO
+	 */
+	public CoverStrategy getSelectedCoverStrategy() {
+		if(this._selectedCoverStrategy == null) {
+			if(this._coverStrategy == CoverStrategy.AUTO) {
+				this._selectedCoverStrategy = selectCoverStrategy(this._transactions, this._coverCodes.length);
+				logger.debug("Cover algorithm " + this._selectedCoverStrategy + " selected for " + this._coverCodes.length + " codes");
+			} else {
+				this._selectedCoverStrategy = this._coverStrategy;
 			}
 		}
-		return (double) codeUsage / (double) ct.getUsageTotal();
+		return this._selectedCoverStrategy;
 	}
 	
 	/**
-	 * L(code_CT(X))
-	 * @param code
+	 * Choice of the cover algorithm for a run, from statistics of the transactions and the size of the code table:
+	 * VERTICAL for large dense datasets, INVERTED_INDEX for code tables large compared to the transactions, BITMAP for small item universes, LINEAR otherwise.
+	 * @param transactions Transactions to be covered, null if unknown
+	 * @param codeTableSize Number of codes of the code table
 	 * @return
 	 */
-	private static double codeLengthOfcode(CodeTable ct, KItemset code) {
-		return - Math.log(probabilisticDistrib(ct, code));
+	public static CoverStrategy selectCoverStrategy(TransactionSet transactions, int codeTableSize) {
+		if(transactions == null || transactions.size() == 0) {
+			return CoverStrategy.LINEAR;
+		}
+		double averageSize = transactions.averageSize();
+		if(averageSize == 0.0) {
+			return CoverStrategy.LINEAR;
+		}
+		double density = transactions.density();
+		double numberOfItems = averageSize / density;
+		if(density >= AUTO_VERTICAL_MIN_DENSITY && transactions.size() >= AUTO_VERTICAL_MIN_TRANSACTIONS) {
+			return CoverStrategy.VERTICAL;
+		}
+		if(codeTableSize >= AUTO_INDEXED_MIN_CODES_PER_ITEM * averageSize) {
+			return CoverStrategy.INVERTED_INDEX;
+		}
+		if(numberOfItems <= AUTO_BITMAP_MAX_ITEMS) {
+			return CoverStrategy.BITMAP;
+		}
+		return CoverStrategy.LINEAR;
 	}
 	
 	/**
-	 * L(CT|D)
+	 * Engine of a cover algorithm, to cover transactions one by one or to check an algorithm against NAIVE
+	 * @param strategy Any strategy but AUTO and VERTICAL, which covers all the transactions at once
+	 * @param codes Codes of the code table, in cover order
 	 * @return
 	 */
-	private static double codeTableCodeLength(CodeTable ct) {
-		double result = 0.0;
-		ct.regenerateStandardCodeTable(); // To be sure all codes appearing are taken into account in the STCT
-		Iterator<KItemset> itCodes = ct.codeIterator();
-		while(itCodes.hasNext()) {
-			KItemset code = itCodes.next();
-			if(code.getUsage() != 0) {
-				// CB: this is the code length according to the CT
-				double cL = codeLengthOfcode(ct, code);
-				
-				// CB: we also need the code length according to the ST: we codify the codeusing it
-				double stcL = 0 ;
-				if (!ct.isStandard()) {
-					stcL = codeLengthOfCodeAccordingST(ct, code);
-				}
-				// else => it is a 0.0
-				
-				logger.trace("codeTableCodeLength: CTlength=" + cL + " stcL=" + stcL + " code=" + code );
-				result += cL + stcL;
-			}
+	public static CoverEngine createCoverEngine(CoverStrategy strategy, KItemset[] codes) {
+		switch(strategy) {
+		case NAIVE:
+			return new NaiveCover(codes);
+		case LINEAR:
+			return new LinearCover(codes);
+		case BITMAP:
+			return new BitmapCover(codes);
+		case INVERTED_INDEX:
+			return new InvertedIndexCover(codes);
+		case TRIE:
+			return new TrieCover(codes);
+		case PREFIX_SHARING:
+			return new PrefixSharingCover(codes);
+		default:
+			throw new LogicException("No cover engine for the strategy " + strategy);
 		}
-		return result;
 	}
 
-	
-	/** 
-	 * L(code_ST(X)).
-	 * The argument codetable is NOT the standard codetable
-	 * @return 0 if the given code table is the standard codetable
+	public boolean isParallelCover() {
+		return _parallelCover;
+	}
+
+	/**
+	 * Choose to cover the transactions in parallel, by chunks on the common ForkJoinPool.
+	 * The results are the same as the sequential cover.
+	 * @param parallelCover
 	 */
-	private static double codeLengthOfCodeAccordingST(CodeTable ct, KItemset code) {
-		double result = 0.0;
-		// this method should return 0 if the codetable is the ST
-		if (! ct.isStandard()) {
-			Iterator<Integer> itCode = code.iterator();
-			while(itCode.hasNext()) {
-				Integer item = itCode.next();
-				double itemCodeLength = codeLengthOfcode(ct.getStandardCodeTable(), Utils.createCodeSingleton(item));
-				logger.trace("codeLengthOfCodeAccordingST: codelength=" + itemCodeLength + " item=" + item);
-				result += itemCodeLength; 
-			}
+	public void setParallelCover(boolean parallelCover) {
+		this._parallelCover = parallelCover;
+	}
+
+	/**
+	 * @return The lengths of the codes with their current usages, computed on the first call after a change of the codes or usages
+	 */
+	private CodeLengthTable codeLengths() {
+		if(this._codeLengths == null) {
+			double[] standardItemLengths = this._snapshotUsages ? this._snapshot.getStandardItemLengths() : null;
+			this._codeLengths = new CodeLengthTable(this._coverCodes, this._usages, this._usageTotal, standardItemLengths);
 		}
-		return result; 
+		return this._codeLengths;
 	}
 	
+	/**
+	 * L(CT|D), the codes are also coded with the standard code table derived from the measured one
+	 * @return
+	 */
+	private double codeTableCodeLength() {
+		return this.codeLengths().codeTableCodeLength(false);
+	}
+
 //	TBD
 	/**
 	 * L(D, CT)
@@ -136,7 +273,7 @@ public class CodificationMeasure {
 	 * @throws LogicException 
 	 */
 	public double totalCompressedSize() throws LogicException {
-		double ctL = codeTableCodeLength(this._codetable);
+		double ctL = codeTableCodeLength();
 		double teL = codificationLength();
 		return ctL + teL;
 	}
@@ -144,57 +281,372 @@ public class CodificationMeasure {
 	
 	/**
 	 * return a codetable with the usages initialized according to the cover
-	 * PRE: the codeTable must be in standardCoverTable order
+	 * Collapsed identical transactions are covered once and weighted by their multiplicity.
+	 * The codes are covered in standardCoverTable order, whatever the order of the codetable
 	 */
 	public void updateUsages() {
-				
-		Iterator<KItemset> itCodes = this._codetable.codeIterator();
-		while(itCodes.hasNext()) {
-			KItemset code = itCodes.next();
-			code.setUsage(0); 
+		this.coverUpdatingUsages();
+	}
+	
+	/**
+	 * Same result as updateUsages() followed by codificationLength(), covering each transaction only once.
+	 * L(D|CT) is derived from the new usages as the sum over the codes of usage * L(code_CT(X)).
+	 * The codes are covered in standardCoverTable order, whatever the order of the codetable
+	 * @return L(D|CT)
+	 */
+	public double updateUsagesAndCodificationLength() {
+		Set<KItemset> newSingletons = this.coverUpdatingUsages();
+		
+		CodeLengthTable lengths = this.codeLengths();
+		double result = 0.0;
+		for (int iCode = 0; iCode < this._coverCodes.length; iCode++) {
+			if(this._usages[iCode] != 0) {
+				double codelength = lengths.codeLength(iCode);
+				assert ! Double.isInfinite(codelength);
+				result += this._usages[iCode] * codelength;
+			}
+		}
+		// The singletons created during the cover start with a usage of 1 on top of their occurrences
+		for (KItemset code: newSingletons) {
+			result -= lengths.codeLength(lengths.position(code));
+		}
+		return result;
+	}
+	
+	/**
+	 * Set the usage of each code to its number of occurrences in the covers
+	 * @return The singletons added for the items appearing in no code
+	 */
+	private Set<KItemset> coverUpdatingUsages() {
+		CoverCounts counts = this.coverAll();
+		this._usages = counts._codeCounts; // identical transactions have the same cover, they are covered once
+		this._snapshotUsages = false;
+		
+		LinkedHashMap<KItemset, Integer> singletonCounts = this.uncoveredSingletons(counts);
+		KItemset[] singletons = new KItemset[singletonCounts.size()];
+		int[] singletonUsages = new int[singletonCounts.size()];
+		int iSingleton = 0;
+		for (Map.Entry<KItemset, Integer> singletonCount : singletonCounts.entrySet()) {
+			singletons[iSingleton] = singletonCount.getKey();
+			singletonUsages[iSingleton] = 1 + singletonCount.getValue();
+			iSingleton++;
 		}
+		this.addCodes(singletons, singletonUsages);
 		
-		for (KItemset t: this._transactions) {
-			ItemsetSet codes = this.codify(t); 
-			for (KItemset code: codes) { 
-				code.setUsage(code.getUsage()+1);
+		this.recomputeUsageTotal();
+		this.invalidateCodeLengths();
+		return singletonCounts.keySet();
+	}
+	
+	/**
+	 * Cover of all the transactions, in parallel if asked. The codes and usages are not modified.
+	 * @return The occurrences of the codes in the covers
+	 */
+	private CoverCounts coverAll() {
+		if(this.getSelectedCoverStrategy() == CoverStrategy.VERTICAL) {
+			return this.coverAllVertically();
+		}
+		this.initCoverers();
+		
+		TransactionStore store = null;
+		KItemset[] transactionArray = null;
+		if(this._transactions instanceof TransactionStore) {
+			store = (TransactionStore) this._transactions;
+		} else {
+			transactionArray = new KItemset[this._transactions.size()];
+			int iTrans = 0;
+			for (KItemset t : this._transactions) {
+				transactionArray[iTrans++] = t;
 			}
-			
 		}
 		
-		this._codetable.recomputeUsageTotal();
+		int[] order = null;
+		if(this.getSelectedCoverStrategy() == CoverStrategy.PREFIX_SHARING) {
+			order = ((PrefixSharingCover) this._coverers.get()._engine).transactionOrder(this._transactions);
+		}
+		
+		CoverTask task = new CoverTask(store, transactionArray, order, 0, this._transactions.size());
+		CoverCounts result = (this._parallelCover) ? ForkJoinPool.commonPool().invoke(task) : task.coverRange();
+		if(order != null) {
+			result.sortUncoveredByTransaction();
+		}
+		return result;
 	}
 	
-	/** 
-	 * Codifying function according to the KRIMP paper
-	 * 
-	 * @param trans
-	 * @return
+	/**
+	 * Cover of all the transactions code by code with the transaction bitmaps of the items.
+	 * The uncovered items are listed in the order of their first appearance in the transactions, as by the other strategies.
+	 * @return The occurrences of the codes in the covers
 	 */
-	private ItemsetSet codify(KItemset trans) {
-		KItemset auxTrans = new KItemset(trans);
-		ItemsetSet result = new ItemsetSet(); 
-		Iterator<KItemset> itIs = this._codetable.codeIterator();
-		KItemset auxCode = null; 
-		while (itIs.hasNext() && (auxTrans.size() != 0) ) { // Searching for the cover
-			auxCode = itIs.next(); 
-			if (auxTrans.containsAll(auxCode)) {
-				result.add(auxCode); 
-				auxTrans = auxTrans.substraction(auxCode); 
+	private CoverCounts coverAllVertically() {
+		if(this._dataIndexes == null) {
+			this._dataIndexes = new DataIndexes(this._transactions);
+		}
+		
+		int[] multiplicities = new int[this._transactions.size()];
+		boolean collapsed = false;
+		if(this._transactions instanceof TransactionStore) {
+			TransactionStore store = (TransactionStore) this._transactions;
+			for (int iTrans = 0; iTrans < multiplicities.length; iTrans++) {
+				multiplicities[iTrans] = store.getMultiplicity(iTrans);
+				collapsed |= (multiplicities[iTrans] != 1);
+			}
+		} else {
+			int iTrans = 0;
+			for (KItemset t : this._transactions) {
+				multiplicities[iTrans] = t.getMultiplicity();
+				collapsed |= (multiplicities[iTrans] != 1);
+				iTrans++;
+			}
+		}
+		if(! collapsed) {
+			multiplicities = null;
+		}
+		
+		CoverCounts result = new CoverCounts(this._coverCodes.length);
+		HashMap<Integer, CompressedBitmap> uncovered = new VerticalCover(this._coverCodes).cover(this._dataIndexes, multiplicities, result._codeCounts);
+		ArrayList<Integer> uncoveredItems = new ArrayList<Integer>(uncovered.keySet());
+		uncoveredItems.sort((item1, item2) -> {
+			int firstTransactionComparison = Integer.compare(uncovered.get(item1).nextSetBit(0), uncovered.get(item2).nextSetBit(0));
+			return (firstTransactionComparison != 0) ? firstTransactionComparison : Integer.compare(item1, item2);
+		});
+		for (int item : uncoveredItems) {
+			result.addUncovered(uncovered.get(item).nextSetBit(0), item, VerticalCover.weightedCardinality(uncovered.get(item), multiplicities));
+		}
+		return result;
+	}
+	
+	/**
+	 * Codifying function according to the KRIMP paper, using the cover engine of the selected strategy.
+	 * Not thread-safe, each thread covering transactions uses its own. Nothing is allocated per transaction. 
+	 */
+	private class Coverer {
+		
+		private CoverEngine _engine;
+		private int[] _codeBuffer = new int[_coverCodes.length]; // Positions in _coverCodes of the codes of the last cover
+		private KItemset _uncovered = new KItemset(); // Items of the last covered transaction that are in no code
+		
+		private Coverer(CoverStrategy strategy) {
+			// The VERTICAL cover of a whole transaction set gives the same covers as the linear scan of each transaction
+			this._engine = createCoverEngine((strategy == CoverStrategy.VERTICAL) ? CoverStrategy.LINEAR : strategy, _coverCodes);
+		}
+		
+		/**
+		 * @param trans
+		 * @return Number of codes of the cover, written in _codeBuffer. The items appearing in no code are written in _uncovered.
+		 */
+		private int cover(KItemset trans) {
+			return this._engine.cover(trans, this._codeBuffer, this._uncovered);
+		}
+	}
+	
+	/**
+	 * Occurrences of the codes in the covers of a range of transactions
+	 */
+	private static class CoverCounts {
+		
+		private int[] _codeCounts; // Occurrences of each code weighted by the multiplicity of the transactions, by position in cover order
+		private int[] _uncovered = new int[0]; // Items appearing in no code, each preceded by the index of its transaction and followed by its multiplicity, in cover order
+		private int _uncoveredLength = 0;
+		
+		private CoverCounts(int nbCodes) {
+			this._codeCounts = new int[nbCodes];
+		}
+		
+		private void addUncovered(int iTrans, int item, int multiplicity) {
+			if(this._uncoveredLength + 3 > this._uncovered.length) {
+				this._uncovered = Arrays.copyOf(this._uncovered, Math.max(this._uncoveredLength + 3, this._uncovered.length * 2));
 			}
+			this._uncovered[this._uncoveredLength++] = iTrans;
+			this._uncovered[this._uncoveredLength++] = item;
+			this._uncovered[this._uncoveredLength++] = multiplicity;
 		}
 		
-		// adding the codes that appear in the transaction but not in the code table
-		if(! auxTrans.isEmpty()) {
-			for(int item : auxTrans) {
-				KItemset sinlgton = Utils.createCodeSingleton(item, 0, 1);
-				result.add(sinlgton);
-				this._codetable.addSingleton(sinlgton);
+		/**
+		 * Put the uncovered items back in transaction order, when the transactions were not covered in that order. The items of a transaction keep their order.
+		 */
+		private void sortUncoveredByTransaction() {
+			Integer[] entries = new Integer[this._uncoveredLength / 3];
+			for (int iEntry = 0; iEntry < entries.length; iEntry++) {
+				entries[iEntry] = iEntry * 3;
+			}
+			Arrays.sort(entries, (entry1, entry2) -> Integer.compare(this._uncovered[entry1], this._uncovered[entry2])); // Stable
+			int[] sorted = new int[this._uncoveredLength];
+			for (int iEntry = 0; iEntry < entries.length; iEntry++) {
+				System.arraycopy(this._uncovered, entries[iEntry], sorted, iEntry * 3, 3);
 			}
+			this._uncovered = sorted;
 		}
-		auxTrans.clear();
 		
-		return result; 
+		/**
+		 * @param next Counts of the range of transactions following this one
+		 */
+		private void merge(CoverCounts next) {
+			for (int iCode = 0; iCode < this._codeCounts.length; iCode++) {
+				this._codeCounts[iCode] += next._codeCounts[iCode];
+			}
+			for (int i = 0; i < next._uncoveredLength; i += 3) {
+				this.addUncovered(next._uncovered[i], next._uncovered[i+1], next._uncovered[i+2]);
+			}
+		}
+	}
+	
+	/**
+	 * Cover of the transactions from position from (inclusive) to position to (exclusive) in the cover order, split in chunks of PARALLEL_CHUNK_SIZE transactions.
+	 * The counts of the chunks are merged in cover order, so the result does not depend on the scheduling.
+	 */
+	private class CoverTask extends RecursiveTask<CoverCounts> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private TransactionStore _store; // Source of the transactions, if not null
+		private KItemset[] _transactionArray; // Source of the transactions otherwise
+		private int[] _order; // Index of the transaction at each position of the cover order, null to cover them in their order
+		private int _from;
+		private int _to;
+		
+		private CoverTask(TransactionStore store, KItemset[] transactionArray, int[] order, int from, int to) {
+			this._store = store;
+			this._transactionArray = transactionArray;
+			this._order = order;
+			this._from = from;
+			this._to = to;
+		}
+		
+		@Override
+		protected CoverCounts compute() {
+			if(this._to - this._from <= PARALLEL_CHUNK_SIZE) {
+				return this.coverRange();
+			}
+			int middle = (this._from + this._to) >>> 1;
+			CoverTask first = new CoverTask(this._store, this._transactionArray, this._order, this._from, middle);
+			CoverTask second = new CoverTask(this._store, this._transactionArray, this._order, middle, this._to);
+			second.fork();
+			CoverCounts result = first.compute();
+			result.merge(second.join());
+			return result;
+		}
+		
+		/**
+		 * Sequential cover of the whole range, using the Coverer of the current thread
+		 * @return
+		 */
+		private CoverCounts coverRange() {
+			Coverer coverer = _coverers.get();
+			CoverCounts result = new CoverCounts(_coverCodes.length);
+			KItemset buffer = new KItemset();
+			for (int position = this._from; position < this._to; position++) {
+				int iTrans = (this._order != null) ? this._order[position] : position;
+				KItemset t = null;
+				if(this._store != null) {
+					this._store.get(iTrans, buffer);
+					t = buffer;
+				} else {
+					t = this._transactionArray[iTrans];
+				}
+				int nbCodes = coverer.cover(t);
+				for (int iCode = 0; iCode < nbCodes; iCode++) {
+					result._codeCounts[coverer._codeBuffer[iCode]] += t.getMultiplicity();
+				}
+				for (int i = 0; i < coverer._uncovered.size(); i++) {
+					result.addUncovered(iTrans, coverer._uncovered.itemAt(i), t.getMultiplicity());
+				}
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Singletons for the items that appear in no code, in the order of their first appearance in the transactions.
+	 * @param counts
+	 * @return The new singletons, with their occurrences in the covers weighted by the multiplicity of the transactions
+	 */
+	private LinkedHashMap<KItemset, Integer> uncoveredSingletons(CoverCounts counts) {
+		LinkedHashMap<KItemset, Integer> result = new LinkedHashMap<KItemset, Integer>();
+		HashMap<Integer, KItemset> singletons = new HashMap<Integer, KItemset>();
+		for (int i = 0; i < counts._uncoveredLength; i += 3) {
+			int item = counts._uncovered[i+1];
+			KItemset sinlgton = singletons.get(item);
+			if(sinlgton == null) {
+				sinlgton = Utils.createCodeSingleton(item, 0, 1);
+				singletons.put(item, sinlgton);
+				result.put(sinlgton, 0);
+			}
+			result.put(sinlgton, result.get(sinlgton) + counts._uncovered[i+2]);
+		}
+		return result;
+	}
+	
+	/**
+	 * Add codes to the measure, keeping the codes in standard cover order. The codes already present keep their relative order and the new ones are placed after the equal ones.
+	 * The snapshot of the codetable is not modified, a new array of codes is built.
+	 * @param newCodes Codes that must not overlap with any existing code
+	 * @param newUsages Usage of each new code
+	 */
+	private void addCodes(KItemset[] newCodes, int[] newUsages) {
+		if(newCodes.length == 0) {
+			return;
+		}
+		int nbCodes = this._coverCodes.length + newCodes.length;
+		KItemset[] codes = Arrays.copyOf(this._coverCodes, nbCodes);
+		System.arraycopy(newCodes, 0, codes, this._coverCodes.length, newCodes.length);
+		int[] usages = Arrays.copyOf(this._usages, nbCodes);
+		System.arraycopy(newUsages, 0, usages, this._coverCodes.length, newUsages.length);
+		
+		Integer[] order = new Integer[nbCodes];
+		for (int iCode = 0; iCode < nbCodes; iCode++) {
+			order[iCode] = iCode;
+		}
+		Arrays.sort(order, (iCode1, iCode2) -> CodeTable.standardCoverOrderComparator.compare(codes[iCode1], codes[iCode2])); // Stable, same order as CodeTable.addSingleton
+		
+		this._coverCodes = new KItemset[nbCodes];
+		this._usages = new int[nbCodes];
+		for (int iCode = 0; iCode < nbCodes; iCode++) {
+			this._coverCodes[iCode] = codes[order[iCode]];
+			this._usages[iCode] = usages[order[iCode]];
+		}
+		this._snapshotUsages = false;
+		this.invalidateCoverCodes();
+	}
+	
+	private void recomputeUsageTotal() {
+		this._usageTotal = 0;
+		for (int usage : this._usages) {
+			this._usageTotal += usage;
+		}
+	}
+	
+	/**
+	 * Build the cover algorithms of the current codes if needed
+	 */
+	private void initCoverers() {
+		if(this._coverers == null) {
+			CoverStrategy strategy = this.getSelectedCoverStrategy();
+			this._coverers = ThreadLocal.withInitial(() -> new Coverer(strategy));
+		}
+	}
+	
+	/**
+	 * To be called each time the array of codes changes
+	 */
+	private void invalidateCoverCodes() {
+		this._coverers = null;
+		this._codeLengths = null;
+	}
+	
+	/**
+	 * To be called each time the transactions, the code table or the cover strategy change
+	 */
+	private void invalidateCoverStrategy() {
+		this._selectedCoverStrategy = null;
+		this.invalidateCoverCodes();
+	}
+	
+	/**
+	 * To be called each time the usages of the codes change
+	 */
+	private void invalidateCodeLengths() {
+		this._codeLengths = null;
 	}
 	
 	/** 
@@ -209,67 +661,85 @@ public class CodificationMeasure {
 	 */
 	
 	private Couple<ItemsetSet, KItemset> codifyAware (KItemset trans)  {
-		KItemset auxTrans = new KItemset(trans);
+		this.initCoverers();
+		Coverer coverer = this._coverers.get();
+		int nbCodes = coverer.cover(trans);
 		ItemsetSet result = new ItemsetSet(); 
-		Iterator<KItemset> itIs = this._codetable.codeIterator();
-		KItemset auxCode = null; 
-		while (itIs.hasNext() && (auxTrans.size() != 0) ) {
-			auxCode = itIs.next(); 
-			if (auxTrans.containsAll(auxCode)) {
-				result.add(auxCode); 
-				auxTrans = auxTrans.substraction(auxCode); 
-			}
+		for (int iCode = 0; iCode < nbCodes; iCode++) {
+			result.add(this._coverCodes[coverer._codeBuffer[iCode]]); 
 		}
 		// currently, trans can be non-empty
 		// we return both the codes used, and the remaining non-covered part of the transaction (new items) 
-		return new Couple<ItemsetSet, KItemset>(result, auxTrans); 
+		return new Couple<ItemsetSet, KItemset>(result, new KItemset(coverer._uncovered)); 
 	}
 
 	/** 
 	 * Length of the codification of a set of transactions using this code table
 	 * It uses exactly the same cover order (it does not update either the support or the usage of the elements in the table) 
+	 * Collapsed identical transactions are covered once and weighted by their multiplicity.
 	 */
 	public double codificationLength () {
+		CoverCounts counts = this.coverAll();
+		CodeLengthTable lengths = this.codeLengths();
 		double result = 0.0;
-		ItemsetSet codes = null; 
-		for (KItemset it: this._transactions) {
-			codes = this.codify(it); 
-			for (KItemset code: codes) {
-				double codelength = codeLengthOfcode(this._codetable, code);
+		for (int iCode = 0; iCode < this._coverCodes.length; iCode++) {
+			if(counts._codeCounts[iCode] != 0) {
+				double codelength = lengths.codeLength(iCode);
 				assert ! Double.isInfinite(codelength);
-				result += codelength; 
+				result += codelength * counts._codeCounts[iCode]; 
 			}
 		}
+		LinkedHashMap<KItemset, Integer> singletonCounts = this.uncoveredSingletons(counts);
+		for (Map.Entry<KItemset, Integer> singletonCount : singletonCounts.entrySet()) {
+			result += lengths.codeLength(singletonCount.getKey()) * singletonCount.getValue(); 
+		}
+		// The new singletons keep a usage of 1 for the following measures, without changing the usage total
+		int[] singletonUsages = new int[singletonCounts.size()];
+		Arrays.fill(singletonUsages, 1);
+		this.addCodes(singletonCounts.keySet().toArray(new KItemset[0]), singletonUsages);
 		return result; 
 	}
 	
 	public void applyLaplaceSmoothingToUsages () {
 		
-		for (KItemset key: this._codetable.getCodes()) {
-			key.setUsage(key.getUsage()+1);
+		for (int iCode = 0; iCode < this._usages.length; iCode++) {
+			this._usages[iCode]++;
 		}
+		this._snapshotUsages = false;
 		
 		// we now add the singletons that might not have been seen in the new database
+		HashSet<KItemset> codes = new HashSet<KItemset>(Arrays.asList(this._coverCodes));
+		ItemsetSet newSingletons = new ItemsetSet();
 		Integer currentItem = null;
 		KItemset currentKey = null; 
 	    for (Iterator<Integer> itemIter = this._transactions.knownItems().iterator(); itemIter.hasNext(); ){
 	    	currentItem = itemIter.next(); 
 	    	currentKey = Utils.createCodeSingleton(currentItem); 
 	    	
-	    	if (!this._codetable.contains(currentKey)) {
+	    	// knownItems() may repeat an item, it must be added only once
+	    	if (codes.add(currentKey)) {
 	    		currentKey.setUsage(1);
-	    		this._codetable.addSingleton(currentKey); 
+	    		newSingletons.add(currentKey);
 	    	}
 	    }	
-		this._codetable.recomputeUsageTotal(); 
+		int[] singletonUsages = new int[newSingletons.size()];
+		Arrays.fill(singletonUsages, 1);
+		this.addCodes(newSingletons.toArray(new KItemset[0]), singletonUsages);
+		this.recomputeUsageTotal(); 
+		this.invalidateCodeLengths();
 	}
 	
 	public double codetableCodeLength() {
-		return codeTableCodeLength(_codetable);
+		return codeTableCodeLength();
 	}
 	
+	/**
+	 * L(code_CT(X)). If the usage of code is 0, the usage of the equal code of the code table is used.
+	 * @param code
+	 * @return
+	 */
 	public double codeLengthOfCode(KItemset code) {
-		return codeLengthOfcode(_codetable, code);
+		return this.codeLengths().codeLength(code);
 	}
 
 	public String toString() {
@@ -277,20 +747,20 @@ public class CodificationMeasure {
 		// StringBuilder copied from smpf code, just to see ...
 		StringBuilder r = new StringBuilder ();
 		r.append("Total Usages: ");
-		r.append(this._codetable.getUsageTotal());
+		r.append(this._usageTotal);
 		r.append('\n');
-		Iterator<KItemset> itIs = this._codetable.codeIterator();
-		while(itIs.hasNext()) {
-			KItemset is = itIs.next();
+		CodeLengthTable lengths = this.codeLengths();
+		for(int iCode = 0; iCode < this._coverCodes.length; iCode++) {
+			KItemset is = this._coverCodes[iCode];
 			r.append(is.toString());
 			r.append(" s:"); 
 			r.append(is.getSupport()); 
 			r.append(" u:");
-			r.append(is.getUsage());
+			r.append(this._usages[iCode]);
 			r.append(" P:");
-			r.append(probabilisticDistrib(this._codetable, is));
+			r.append(lengths.probability(iCode));
 			r.append(" L:");
-			r.append(codeLengthOfcode(this._codetable, is));
+			r.append(lengths.codeLength(iCode));
 			r.append('\n');
 		}
 		return r.toString();
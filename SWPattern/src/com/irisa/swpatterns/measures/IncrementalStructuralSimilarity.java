@@ -0,0 +1,247 @@
+package com.irisa.swpatterns.measures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import com.irisa.exception.LogicException;
+import com.irisa.krimp.CodeTable;
+import com.irisa.krimp.CodeTableSnapshot;
+import com.irisa.krimp.cover.LinearCover;
+import com.irisa.krimp.data.KItemset;
+import com.irisa.krimp.data.TransactionSet;
+
+/**
+ * Measures.structuralSimilarityKeepingDistribution maintained over successive versions of a dataset.
+ * The cover of each transaction by both code tables is kept, so that adding, removing or changing transactions only covers the transactions of the delta.
+ * The lengths are then derived from the occurrences of the codes, in a time depending only on the size of the code tables.
+ *
+ * The reference code table is smoothed as by CodificationMeasure.applyLaplaceSmoothingToUsages with the items of the current transactions:
+ * the items appearing in no singleton of the reference code table are the only ones left uncovered by its codes, and get a singleton of usage 1.
+ * The codes of both code tables are covered in standard cover order, as by CodificationMeasure.
+ * @author pmaillot
+ *
+ */
+public class IncrementalStructuralSimilarity {
+
+	private KItemset[] _evalCodes; // Codes of the code table of the dataset
+	private CodeLengthTable _evalLengths;
+	private long _evalUsageTotal;
+	private int[] _evalCounts; // Occurrences of each code in the covers of the current transactions
+	private long _evalUncoveredCount = 0; // Occurrences of the items appearing in no code
+	private LinearCover _evalCover;
+
+	private KItemset[] _refCodes; // Codes of the reference code table
+	private int[] _refUsages; // Usages after Laplace smoothing
+	private long _refUsageTotal; // Usage total after Laplace smoothing, without the singletons of the items unknown to the reference code table
+	private int[] _refCounts;
+	private HashSet<Integer> _refSingletonItems = new HashSet<Integer>(); // Items having a singleton in the reference code table
+	private long _refUncoveredCount = 0; // Occurrences of the items without singleton in the reference code table, covered by the smoothing singletons
+	private int _refExtraSingletons = 0; // Number of items of the current transactions without singleton in the reference code table
+	private LinearCover _refCover;
+
+	private int[] _itemTransactionCounts = new int[0]; // Number of current transactions containing each item
+	private ArrayList<TransactionCover> _transactionCovers = new ArrayList<TransactionCover>(); // Cover of each transaction by id, null for removed transactions
+
+	private int[] _codeBuffer;
+	private KItemset _uncovered = new KItemset();
+
+	/**
+	 * Covers of a transaction by both code tables
+	 */
+	private static class TransactionCover {
+		private KItemset _transaction;
+		private int[] _evalCodes; // Positions of the codes of the cover
+		private int _evalUncovered; // Number of items of the transaction in no code
+		private int[] _refCodes;
+		private int _refUncovered;
+	}
+
+	/**
+	 * The transactions of D1 get the ids 0 to D1.size() - 1 in their iteration order
+	 * @param D1 The database to be compared
+	 * @param CT1 The codetable obtained from D1
+	 * @param CT2 The codetable of the original KB (against which we compare D1)
+	 */
+	public IncrementalStructuralSimilarity(TransactionSet D1, CodeTable CT1, CodeTable CT2) {
+		CodeTableSnapshot evalSnapshot = CT1.getSnapshot().inCoverOrder();
+		this._evalCodes = evalSnapshot.getCodes();
+		int[] evalUsages = evalSnapshot.getUsages();
+		this._evalUsageTotal = 0;
+		for (int usage : evalUsages) {
+			this._evalUsageTotal += usage;
+		}
+		this._evalLengths = new CodeLengthTable(this._evalCodes, evalUsages, this._evalUsageTotal);
+		this._evalCounts = new int[this._evalCodes.length];
+		this._evalCover = new LinearCover(this._evalCodes);
+
+		CodeTableSnapshot refSnapshot = CT2.getSnapshot().inCoverOrder();
+		this._refCodes = refSnapshot.getCodes();
+		this._refUsages = refSnapshot.getUsages();
+		this._refUsageTotal = 0;
+		for (int iCode = 0; iCode < this._refUsages.length; iCode++) {
+			this._refUsages[iCode]++;
+			this._refUsageTotal += this._refUsages[iCode];
+			if(this._refCodes[iCode].size() == 1) {
+				this._refSingletonItems.add(this._refCodes[iCode].itemAt(0));
+			}
+		}
+		this._refCounts = new int[this._refCodes.length];
+		this._refCover = new LinearCover(this._refCodes);
+
+		this._codeBuffer = new int[Math.max(this._evalCodes.length, this._refCodes.length)];
+		for (KItemset trans : D1) {
+			this.addTransaction(trans);
+		}
+	}
+
+	/**
+	 * @param trans
+	 * @return Id of the new transaction
+	 */
+	public int addTransaction(KItemset trans) {
+		this._transactionCovers.add(this.cover(trans));
+		return this._transactionCovers.size() - 1;
+	}
+
+	/**
+	 * @param id Id of a current transaction
+	 */
+	public void removeTransaction(int id) {
+		this.uncover(this.getCover(id));
+		this._transactionCovers.set(id, null);
+	}
+
+	/**
+	 * Replace a transaction, keeping its id
+	 * @param id Id of a current transaction
+	 * @param trans New content of the transaction
+	 */
+	public void changeTransaction(int id, KItemset trans) {
+		this.uncover(this.getCover(id));
+		this._transactionCovers.set(id, this.cover(trans));
+	}
+
+	/**
+	 * @param id
+	 * @return The current content of the transaction
+	 */
+	public KItemset getTransaction(int id) {
+		return this.getCover(id)._transaction;
+	}
+
+	private TransactionCover getCover(int id) {
+		TransactionCover result = (id >= 0 && id < this._transactionCovers.size()) ? this._transactionCovers.get(id) : null;
+		if(result == null) {
+			throw new LogicException("No transaction of id " + id);
+		}
+		return result;
+	}
+
+	/**
+	 * Cover the transaction by both code tables and add its codes to the occurrences
+	 * @param trans
+	 * @return
+	 */
+	private TransactionCover cover(KItemset trans) {
+		TransactionCover result = new TransactionCover();
+		result._transaction = new KItemset(trans);
+		int multiplicity = trans.getMultiplicity();
+
+		int nbCodes = this._evalCover.cover(trans, this._codeBuffer, this._uncovered);
+		result._evalCodes = Arrays.copyOf(this._codeBuffer, nbCodes);
+		result._evalUncovered = this._uncovered.size();
+		for (int iCode : result._evalCodes) {
+			this._evalCounts[iCode] += multiplicity;
+		}
+		this._evalUncoveredCount += (long) result._evalUncovered * multiplicity;
+
+		nbCodes = this._refCover.cover(trans, this._codeBuffer, this._uncovered);
+		result._refCodes = Arrays.copyOf(this._codeBuffer, nbCodes);
+		result._refUncovered = this._uncovered.size();
+		for (int iCode : result._refCodes) {
+			this._refCounts[iCode] += multiplicity;
+		}
+		this._refUncoveredCount += (long) result._refUncovered * multiplicity;
+
+		for (int i = 0; i < trans.size(); i++) {
+			int item = trans.itemAt(i);
+			if(item >= this._itemTransactionCounts.length) {
+				this._itemTransactionCounts = Arrays.copyOf(this._itemTransactionCounts, Math.max(item + 1, this._itemTransactionCounts.length * 2));
+			}
+			if(this._itemTransactionCounts[item]++ == 0 && ! this._refSingletonItems.contains(item)) {
+				this._refExtraSingletons++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Remove the codes of the covers of a transaction from the occurrences
+	 * @param cover
+	 */
+	private void uncover(TransactionCover cover) {
+		int multiplicity = cover._transaction.getMultiplicity();
+		for (int iCode : cover._evalCodes) {
+			this._evalCounts[iCode] -= multiplicity;
+		}
+		this._evalUncoveredCount -= (long) cover._evalUncovered * multiplicity;
+		for (int iCode : cover._refCodes) {
+			this._refCounts[iCode] -= multiplicity;
+		}
+		this._refUncoveredCount -= (long) cover._refUncovered * multiplicity;
+
+		for (int i = 0; i < cover._transaction.size(); i++) {
+			int item = cover._transaction.itemAt(i);
+			if(--this._itemTransactionCounts[item] == 0 && ! this._refSingletonItems.contains(item)) {
+				this._refExtraSingletons--;
+			}
+		}
+	}
+
+	/**
+	 * Same as CodificationMeasure.codificationLength() of the current transactions with CT1
+	 * @return L(D1|CT1)
+	 */
+	public double codificationLength() {
+		double result = 0.0;
+		for (int iCode = 0; iCode < this._evalCodes.length; iCode++) {
+			if(this._evalCounts[iCode] != 0) {
+				double codelength = this._evalLengths.codeLength(iCode);
+				assert ! Double.isInfinite(codelength);
+				result += codelength * this._evalCounts[iCode];
+			}
+		}
+		// The items in no code are coded by singletons of usage 1
+		result += - Math.log((double) 1 / (double) this._evalUsageTotal) * this._evalUncoveredCount;
+		return result;
+	}
+
+	/**
+	 * Same as CodificationMeasure.codificationLength() of the current transactions with CT2 after applyLaplaceSmoothingToUsages()
+	 * @return L(D1|CT2) with Laplace smoothing
+	 */
+	public double referenceCodificationLength() {
+		long usageTotal = this._refUsageTotal + this._refExtraSingletons;
+		CodeLengthTable lengths = new CodeLengthTable(this._refCodes, this._refUsages, usageTotal);
+		double result = 0.0;
+		for (int iCode = 0; iCode < this._refCodes.length; iCode++) {
+			if(this._refCounts[iCode] != 0) {
+				result += lengths.codeLength(iCode) * this._refCounts[iCode];
+			}
+		}
+		result += - Math.log((double) 1 / (double) usageTotal) * this._refUncoveredCount;
+		return result;
+	}
+
+	/**
+	 * Same as Measures.structuralSimilarityKeepingDistribution on the current transactions
+	 * @return
+	 */
+	public double structuralSimilarity() {
+		double evalKrimpSize = this.codificationLength();
+		assert evalKrimpSize > 0.0;
+		return this.referenceCodificationLength() / evalKrimpSize;
+	}
+
+}
@@ -9,16 +9,114 @@
 
 package com.irisa.swpatterns.measures;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.apache.log4j.Logger;
 
 import com.irisa.krimp.CodeTable;
-import com.irisa.krimp.data.ItemsetSet;
+import com.irisa.krimp.cover.NaiveCover;
 import com.irisa.krimp.data.KItemset;
+import com.irisa.krimp.data.TransactionSet;
 
 public class Measures {
 	
 	private static Logger logger = Logger.getLogger(Measures.class);
+	
+	private static CodificationMeasure.CoverStrategy coverStrategy = CodificationMeasure.CoverStrategy.AUTO; // Algorithm used by the covers of the measures
+
+	public static CodificationMeasure.CoverStrategy getCoverStrategy() {
+		return coverStrategy;
+	}
+
+	/**
+	 * Select the algorithm used by the covers of the following measures. By default (AUTO), each measure chooses it according to its dataset and code table.
+	 * @param strategy
+	 */
+	public static void setCoverStrategy(CodificationMeasure.CoverStrategy strategy) {
+		coverStrategy = strategy;
+	}
+
+	private static boolean parallelCover = false; // Set true to cover the transactions of the measures in parallel
 
+	public static boolean isParallelCover() {
+		return parallelCover;
+	}
+
+	/**
+	 * Select whether the following measures cover their transactions in parallel. The results do not change.
+	 * @param parallel
+	 */
+	public static void setParallelCover(boolean parallel) {
+		parallelCover = parallel;
+	}
+	
+	/**
+	 * @return A codification measure configured with the current cover algorithm and parallelism
+	 */
+	private static CodificationMeasure createMeasure(TransactionSet D, CodeTable CT) {
+		CodificationMeasure result = new CodificationMeasure(D, CT);
+		result.setCoverStrategy(coverStrategy);
+		result.setParallelCover(parallelCover);
+		return result;
+	}
+	
+	/**
+	 * @param sameTransactions Measure of the same transactions D, whose indexes are reused instead of being built again by a VERTICAL cover
+	 * @return A codification measure configured with the current cover algorithm and parallelism
+	 */
+	private static CodificationMeasure createMeasure(TransactionSet D, CodeTable CT, CodificationMeasure sameTransactions) {
+		CodificationMeasure result = createMeasure(D, CT);
+		result.setDataIndexes(sameTransactions.getDataIndexes());
+		return result;
+	}
+	
+	/**
+	 * Check that a cover algorithm gives the same usages as the reference algorithm of the KRIMP paper on a dataset, logging the differences.
+	 * @param D
+	 * @param CT Code table, covered in standardCoverTable order
+	 * @param strategy Algorithm to be checked
+	 * @return true if the usages of all the codes and of the singletons of the uncovered items are the same
+	 */
+	public static boolean checkCoverStrategy(TransactionSet D, CodeTable CT, CodificationMeasure.CoverStrategy strategy) {
+		KItemset[] codes = CT.getSnapshot().inCoverOrder().getCodes();
+		LinkedHashMap<Integer, Integer> referenceUncovered = new LinkedHashMap<Integer, Integer>();
+		int[] referenceUsages = new NaiveCover(codes).coverUsages(D, referenceUncovered);
+		
+		CodificationMeasure measure = new CodificationMeasure(D, CT);
+		measure.setCoverStrategy(strategy);
+		measure.setParallelCover(parallelCover);
+		measure.updateUsages();
+		HashMap<KItemset, Integer> usages = new HashMap<KItemset, Integer>();
+		for (KItemset code : measure.getCodetable().getCodes()) {
+			usages.put(code, code.getUsage());
+		}
+		
+		boolean result = (usages.size() == codes.length + referenceUncovered.size());
+		for (int iCode = 0; iCode < codes.length; iCode++) {
+			if(! usages.containsKey(codes[iCode]) || usages.get(codes[iCode]) != referenceUsages[iCode]) {
+				logger.error(measure.getSelectedCoverStrategy() + " cover: usage of " + codes[iCode] + " " + usages.get(codes[iCode]) + " instead of " + referenceUsages[iCode]);
+				result = false;
+			}
+		}
+		for (Map.Entry<Integer, Integer> uncovered : referenceUncovered.entrySet()) {
+			KItemset singleton = new KItemset();
+			singleton.add((int) uncovered.getKey());
+			if(! usages.containsKey(singleton) || usages.get(singleton) != 1 + uncovered.getValue()) { // Singletons created during the cover start with a usage of 1
+				logger.error(measure.getSelectedCoverStrategy() + " cover: usage of the new singleton " + singleton + " " + usages.get(singleton) + " instead of " + (1 + uncovered.getValue()));
+				result = false;
+			}
+		}
+		return result;
+	}
+	
+	private static CodificationMeasure createMeasure(CodeTable CT) {
+		CodificationMeasure result = new CodificationMeasure(CT);
+		result.setCoverStrategy(coverStrategy);
+		result.setParallelCover(parallelCover);
+		return result;
+	}
 
 	
 	/** 
@@ -38,13 +136,13 @@ public class Measures {
 	 * @return
 	 */
 	
-	public static double structuralSimilarityWithoutKeepingDistribution (ItemsetSet D1, CodeTable CT1, CodeTable CT2 ) {
+	public static double structuralSimilarityWithoutKeepingDistribution (TransactionSet D1, CodeTable CT1, CodeTable CT2 ) {
 //		logger.debug("CT1: " + CT1);
 //		logger.debug("CT2: " + CT2);
 
 		
 		// first we get the size of the database D1 codified with its own CT
-		CodificationMeasure measure1 = new CodificationMeasure(D1, CT1);
+		CodificationMeasure measure1 = createMeasure(D1, CT1);
 		double evalKrimpSize = 0.0;
 		try {
 			evalKrimpSize = measure1.codificationLength();
@@ -56,12 +154,11 @@ public class Measures {
 		// we clone the CT2
 		// the usages are updated in the init() method
 		// we reuse as much as possible the information already calculated in the previous CTs
-		CodificationMeasure measure2 = new CodificationMeasure(D1, CT2);
-		measure2.updateUsages();
+		CodificationMeasure measure2 = createMeasure(D1, CT2, measure1);
 		
 		double refKrimpSize = 0.0; 
 		try {
-			refKrimpSize = measure2.codificationLength(); 
+			refKrimpSize = measure2.updateUsagesAndCodificationLength(); 
 		} catch(AssertionError e) {
 			logger.debug(CT2);
 			throw e;
@@ -77,6 +174,7 @@ public class Measures {
 	 * Calculate the Structural similarity between D1 and D2 through their codetables. 
 	 *   
 	 *  This is the new measure adapted to calculate quickly deltas of versions of the same dataset
+	 *  (see IncrementalStructuralSimilarity to follow the successive versions without covering the whole dataset again)
 	 * 
 	 * @param D1 The database to be compared
 	 * @param CT1 The codetable obtained from D1
@@ -84,15 +182,15 @@ public class Measures {
 	 * @return
 	 */
 	
-	public static double structuralSimilarityKeepingDistribution (ItemsetSet D1, CodeTable CT1, CodeTable CT2 ) {
+	public static double structuralSimilarityKeepingDistribution (TransactionSet D1, CodeTable CT1, CodeTable CT2 ) {
 
 		// first we get the size of the database D1 codified with its own CT
-		CodificationMeasure measure1 = new CodificationMeasure(D1, CT1);
+		CodificationMeasure measure1 = createMeasure(D1, CT1);
 		double evalKrimpSize = measure1.codificationLength();
 		
 		// we clone the CT2
 		// we reuse as much as possible the information already calculated in the previous CTs
-		CodificationMeasure measure2 = new CodificationMeasure(D1, CT2);
+		CodificationMeasure measure2 = createMeasure(D1, CT2, measure1);
 		measure2.applyLaplaceSmoothingToUsages(); // Necessary for eventual items unknow to the CT2 appearing in the dataset D1
 		
 		double refKrimpSize = measure2.codificationLength(); 
@@ -123,19 +221,17 @@ public class Measures {
 	 * @return
 	 */
 	
-	public static double structuralSimilarityWithoutKeepingDistributionUsingLengths (ItemsetSet D1, CodeTable CT1, CodeTable CT2 ) {
+	public static double structuralSimilarityWithoutKeepingDistributionUsingLengths (TransactionSet D1, CodeTable CT1, CodeTable CT2 ) {
 
 		// first we get the size of the database D1 codified with its own CT
-		CodificationMeasure measure1 = new CodificationMeasure(D1, CT1);
+		CodificationMeasure measure1 = createMeasure(D1, CT1);
 		double evalKrimpSize = measure1.codificationLength();
 		
 		// we clone the CT2
 		// the usages are updated in the init() method
 		// we reuse as much as possible the information already calculated in the previous CTs
-		CodificationMeasure measure2 = new CodificationMeasure(D1, CT2);
-		measure2.updateUsages();
-		
-		double refKrimpSize = measure2.codificationLength(); 
+		CodificationMeasure measure2 = createMeasure(D1, CT2, measure1);
+		double refKrimpSize = measure2.updateUsagesAndCodificationLength(); 
 		
 		assert evalKrimpSize > 0.0; 
 		
@@ -151,15 +247,15 @@ public class Measures {
 	 * @param D The new database 
 	 * @return 
 	 */
-	public static CTLengthDifferences lengthCodeDifferences (CodeTable CT, ItemsetSet D) {
+	public static CTLengthDifferences lengthCodeDifferences (CodeTable CT, TransactionSet D) {
 	
 		CTLengthDifferences result = new CTLengthDifferences(); 
 		
 //		CodeTable originalCT = new CodeTable (CT); 
-		CodificationMeasure measure1 = new CodificationMeasure(D, CT);
+		CodificationMeasure measure1 = createMeasure(D, CT);
 		measure1.applyLaplaceSmoothingToUsages();
 		
-		CodificationMeasure measure2 = new CodificationMeasure(D, CT);
+		CodificationMeasure measure2 = createMeasure(D, CT, measure1);
 		measure2.updateUsages();
 		measure2.applyLaplaceSmoothingToUsages();
 		
@@ -185,10 +281,10 @@ public class Measures {
 		
 		// we need to apply laplace smoothing to include the codes that are not used
 		// in the game (another option in this case would be to make the assumption of 0*log(0) == 0) 
-		CodificationMeasure measure1 = new CodificationMeasure(CT1);
+		CodificationMeasure measure1 = createMeasure(CT1);
 		measure1.applyLaplaceSmoothingToUsages();
 		
-		CodificationMeasure measure2 = new CodificationMeasure(CT1.getCodes(), CT2);
+		CodificationMeasure measure2 = createMeasure(CT1.getCodes(), CT2);
 		measure2.applyLaplaceSmoothingToUsages();
 		
 		double evalKrimpSize = measure1.codificationLength(); 
@@ -210,9 +306,9 @@ public class Measures {
 	 * @return 
 	 */
 	
-	public static double codificationLengthApplyingLaplaceSmoothing (ItemsetSet D1, CodeTable CT1) {
+	public static double codificationLengthApplyingLaplaceSmoothing (TransactionSet D1, CodeTable CT1) {
 		// we have to clone and smooth the codeTable 
-		CodificationMeasure measure = new CodificationMeasure(D1, CT1);
+		CodificationMeasure measure = createMeasure(D1, CT1);
 		// we change the database without updating anything but the dataIndex
 		// we applyLaplaceSmoothing for perplexity purposes
 		measure.applyLaplaceSmoothingToUsages();
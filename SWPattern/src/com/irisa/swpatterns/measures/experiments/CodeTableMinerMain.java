@@ -0,0 +1,122 @@
+package com.irisa.swpatterns.measures.experiments;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+import com.irisa.krimp.CodeTable;
+import com.irisa.krimp.CodeTableMiner;
+import com.irisa.krimp.KrimpMiner;
+import com.irisa.krimp.SlimMiner;
+import com.irisa.krimp.data.ItemsetSet;
+import com.irisa.krimp.data.TransactionStore;
+import com.irisa.krimp.data.Utils;
+
+/**
+ * Program mining the code table of a dataset in the JVM, instead of the KRIMP script of Vreeken et al.
+ * The mining can be bounded in time or in candidates and checkpointed next to the dataset, to be resumed by a later run.
+ * @author pmaillot
+ *
+ */
+public class CodeTableMinerMain {
+
+	private static Logger logger = Logger.getLogger(CodeTableMinerMain.class);
+
+	public static String DATASET_OPTION = "dataset";
+	public static String CODE_TABLE_OPTION = "codeTable";
+	public static String ALGORITHM_OPTION = "algorithm";
+	public static String MIN_SUPPORT_OPTION = "minSupport";
+	public static String TIME_BUDGET_OPTION = "timeBudget";
+	public static String CANDIDATE_BUDGET_OPTION = "candidateBudget";
+	public static String CHECKPOINT_OPTION = "checkpoint";
+	public static String CHECKPOINT_INTERVAL_OPTION = "checkpointInterval";
+	public static String RESUME_OPTION = "resume";
+	public static String PARALLEL_EVALUATION_OPTION = "parallelEvaluation";
+	public static String COLLAPSE_DUPLICATES_OPTION = "collapseDuplicates";
+	public static String HELP_OPTION = "help";
+
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		PropertyConfigurator.configure("log4j-config.txt");
+
+		CommandLineParser parser = new DefaultParser();
+		Options options = new Options();
+		options.addOption(DATASET_OPTION, true, "dataset (.dat) whose code table is mined");
+		options.addOption(CODE_TABLE_OPTION, true, "file to which the code table is written, with the usages of its codes");
+		options.addOption(ALGORITHM_OPTION, true, "mining algorithm - krimp (default), from the closed frequent itemsets|slim, from the unions of the codes used together");
+		options.addOption(MIN_SUPPORT_OPTION, true, "minimal support of the candidates of krimp - 1 by default");
+		options.addOption(TIME_BUDGET_OPTION, true, "wall-clock time after which the mining stops, in seconds - the code table reached so far is written");
+		options.addOption(CANDIDATE_BUDGET_OPTION, true, "number of candidates evaluated after which the mining stops - the code table reached so far is written");
+		options.addOption(CHECKPOINT_OPTION, false, "save the state of the mining periodically and at its end next to the dataset, in <dataset>" + CodeTableMiner.CHECKPOINT_EXTENSION);
+		options.addOption(CHECKPOINT_INTERVAL_OPTION, true, "time between two checkpoints, in seconds - " + (CodeTableMiner.DEFAULT_CHECKPOINT_INTERVAL / 1000) + " by default");
+		options.addOption(RESUME_OPTION, false, "resume the mining from the checkpoint next to the dataset if there is one");
+		options.addOption(PARALLEL_EVALUATION_OPTION, false, "evaluate the candidates in parallel on all the available cores - same code table as in sequence");
+		options.addOption(COLLAPSE_DUPLICATES_OPTION, false, "cover identical transactions of the dataset only once, weighting them by their number of copies");
+		options.addOption(HELP_OPTION, false, "display this help");
+		try {
+			CommandLine cmd = parser.parse(options, args);
+
+			if(cmd.hasOption(HELP_OPTION)) {
+				HelpFormatter formatter = new HelpFormatter();
+				formatter.printHelp("CodeTableMinerMain", options);
+				System.exit(0);
+			}
+
+			String datasetFilename = cmd.getOptionValue(DATASET_OPTION);
+			String codeTableFilename = cmd.getOptionValue(CODE_TABLE_OPTION);
+
+			TransactionStore transactions = Utils.readTransactionStore(datasetFilename);
+			if(cmd.hasOption(COLLAPSE_DUPLICATES_OPTION)) {
+				transactions = new TransactionStore(ItemsetSet.collapseDuplicates(transactions));
+			}
+
+			String algorithm = cmd.getOptionValue(ALGORITHM_OPTION, "krimp");
+			CodeTableMiner miner = null;
+			switch(algorithm) {
+				case "krimp":
+					miner = new KrimpMiner(transactions);
+					break;
+				case "slim":
+					miner = new SlimMiner(transactions);
+					break;
+				default:
+					logger.error("Unknown algorithm: " + algorithm);
+					System.exit(1);
+			}
+			miner.setParallelEvaluation(cmd.hasOption(PARALLEL_EVALUATION_OPTION));
+			if(cmd.hasOption(TIME_BUDGET_OPTION)) {
+				miner.setTimeBudget(Long.parseLong(cmd.getOptionValue(TIME_BUDGET_OPTION)) * 1000L);
+			}
+			if(cmd.hasOption(CANDIDATE_BUDGET_OPTION)) {
+				miner.setCandidateBudget(Long.parseLong(cmd.getOptionValue(CANDIDATE_BUDGET_OPTION)));
+			}
+			if(cmd.hasOption(CHECKPOINT_OPTION) || cmd.hasOption(RESUME_OPTION)) {
+				miner.setCheckpointFilename(CodeTableMiner.checkpointFilename(datasetFilename));
+			}
+			if(cmd.hasOption(CHECKPOINT_INTERVAL_OPTION)) {
+				miner.setCheckpointInterval(Long.parseLong(cmd.getOptionValue(CHECKPOINT_INTERVAL_OPTION)) * 1000L);
+			}
+			miner.setResuming(cmd.hasOption(RESUME_OPTION));
+
+			long start = System.nanoTime();
+			CodeTable codeTable = null;
+			if(miner instanceof KrimpMiner) {
+				codeTable = ((KrimpMiner) miner).mine(Integer.parseInt(cmd.getOptionValue(MIN_SUPPORT_OPTION, "1")));
+			} else {
+				codeTable = ((SlimMiner) miner).mine();
+			}
+			logger.debug(algorithm + " code table of " + codeTable.getCodes().size() + " codes mined in " + (System.nanoTime() - start) / 1000000 + " ms" + (miner.isFinished() ? "" : ", stopped by the budget"));
+
+			Utils.printCodeTableCodes(codeTable.getCodes(), codeTableFilename);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+}
@@ -18,15 +18,21 @@ import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
 import com.irisa.krimp.CodeTable;
+import com.irisa.krimp.data.ItemRenumbering;
 import com.irisa.krimp.data.ItemsetSet;
+import com.irisa.krimp.data.TransactionStore;
 import com.irisa.krimp.data.Utils;
+import com.irisa.swpatterns.measures.CodificationMeasure;
 import com.irisa.swpatterns.measures.Measures;
 
 public class OrientedMeasuresCalculator {
 	
+	private static Logger logger = Logger.getLogger(OrientedMeasuresCalculator.class);
+	
 	public static String RESULTS_FILE_OPTION = "resultsFile"; 
 	public static String MEASURE_OPTION = "measure"; 
 	public static String ORIGINAL_CT_OPTION ="originalCT"; 
@@ -35,6 +41,11 @@ public class OrientedMeasuresCalculator {
 	public static String COMPARED_DB_ANALYSIS_OPTION = "comparedDBAnalysis"; 
 	public static String DATASET_OPTION = "dataset"; 
 	public static String VREEKEN_OPTION = "vreekenFormat"; 
+	public static String COVER_OPTION = "cover"; 
+	public static String PARALLEL_COVER_OPTION = "parallelCover"; 
+	public static String CHECK_COVER_OPTION = "checkCover"; 
+	public static String COLLAPSE_DUPLICATES_OPTION = "collapseDuplicates"; 
+	public static String RENUMBER_ITEMS_OPTION = "renumberItems"; 
 	public static String HELP_OPTION = "help"; 
 	
 	public static String RESULTS_HEADERS = "originalCT;comparedCT;comparedDB;ourFormat;measure;measureValue;execTime";  
@@ -53,6 +64,11 @@ public class OrientedMeasuresCalculator {
 		options.addOption(COMPARED_DB_ANALYSIS_OPTION, true, "compared db analysis file required to read Vreeken CTs"); 
 		options.addOption(DATASET_OPTION, true, "compared dataset"); 
 		options.addOption(VREEKEN_OPTION, false, "whether we use or not the Vreeken Format"); 
+		options.addOption(COVER_OPTION, true, "cover algorithm - auto (default), chosen from the dataset and code table|naive, reference algorithm|linear|bitmap, for datasets with few densely numbered items (Property and PropertyAndType encodings)|invertedIndex|trie, for large code tables|vertical, for dense datasets|prefixSharing, for datasets of near-identical transactions"); 
+		options.addOption(PARALLEL_COVER_OPTION, false, "cover the transactions in parallel on all the available cores"); 
+		options.addOption(CHECK_COVER_OPTION, false, "check that the cover algorithm gives the same usages as the naive one before measuring"); 
+		options.addOption(COLLAPSE_DUPLICATES_OPTION, false, "cover identical transactions of the dataset only once, weighting them by their number of copies"); 
+		options.addOption(RENUMBER_ITEMS_OPTION, true, "conversion index (.idx) of the items - renumber the items by decreasing support before measuring, reusing the renumbering saved next to the index if there is one"); 
 		options.addOption(HELP_OPTION, false, "display this help"); 
 		try  {
 			CommandLine cmd = parser.parse( options, args);
@@ -94,11 +110,67 @@ public class OrientedMeasuresCalculator {
 				comparedItemCT = Utils.readItemsetSetFile(comparedCTFilename); 
 			}
 			
-			ItemsetSet transactions = Utils.readItemsetSetFile(datasetFilename); 
+			TransactionStore transactions = Utils.readTransactionStore(datasetFilename); 
+			if (cmd.hasOption(RENUMBER_ITEMS_OPTION)) {
+				String renumberingFilename = ItemRenumbering.mappingFilename(cmd.getOptionValue(RENUMBER_ITEMS_OPTION)); 
+				ItemRenumbering renumbering = null; 
+				if (new File(renumberingFilename).exists()) {
+					renumbering = ItemRenumbering.readRenumbering(renumberingFilename); 
+				}
+				else {
+					renumbering = new ItemRenumbering(transactions); 
+				}
+				transactions = renumbering.renumberTransactions(transactions); 
+				originalItemCT = renumbering.renumberCodes(originalItemCT); 
+				comparedItemCT = renumbering.renumberCodes(comparedItemCT); 
+				renumbering.printRenumbering(renumberingFilename); // saved with the items met for the first time
+				logger.debug(renumbering.size() + " items renumbered, renumbering saved to " + renumberingFilename); 
+			}
+			if (cmd.hasOption(COLLAPSE_DUPLICATES_OPTION)) {
+				transactions = new TransactionStore(ItemsetSet.collapseDuplicates(transactions)); 
+			}
 //			DataIndexes index = new DataIndexes(transactions); 
 			CodeTable comparedCT = new CodeTable(comparedItemCT); 
 			CodeTable originalCT = new CodeTable(originalItemCT); 
 			
+			Measures.setParallelCover(cmd.hasOption(PARALLEL_COVER_OPTION)); 
+			String cover = cmd.getOptionValue(COVER_OPTION, "auto"); 
+			switch (cover) {
+				case "auto": 
+					Measures.setCoverStrategy(CodificationMeasure.CoverStrategy.AUTO); 
+					break; 
+				case "naive": 
+					Measures.setCoverStrategy(CodificationMeasure.CoverStrategy.NAIVE); 
+					break; 
+				case "linear": 
+					Measures.setCoverStrategy(CodificationMeasure.CoverStrategy.LINEAR); 
+					break; 
+				case "bitmap": 
+					Measures.setCoverStrategy(CodificationMeasure.CoverStrategy.BITMAP); 
+					break; 
+				case "invertedIndex": 
+					Measures.setCoverStrategy(CodificationMeasure.CoverStrategy.INVERTED_INDEX); 
+					break; 
+				case "trie": 
+					Measures.setCoverStrategy(CodificationMeasure.CoverStrategy.TRIE); 
+					break; 
+				case "vertical": 
+					Measures.setCoverStrategy(CodificationMeasure.CoverStrategy.VERTICAL); 
+					break; 
+				case "prefixSharing": 
+					Measures.setCoverStrategy(CodificationMeasure.CoverStrategy.PREFIX_SHARING); 
+					break; 
+				default: 
+					logger.error("Unknown cover algorithm " + cover + ", using auto"); 
+					break; 
+			}
+			
+			if (cmd.hasOption(CHECK_COVER_OPTION)) {
+				boolean sameCovers = Measures.checkCoverStrategy(transactions, comparedCT, Measures.getCoverStrategy()) 
+						&& Measures.checkCoverStrategy(transactions, originalCT, Measures.getCoverStrategy()); 
+				logger.info("Cover algorithm " + cover + (sameCovers ? " gives the same usages as the naive one" : " DIFFERS from the naive one")); 
+			}
+			
 			long start = System.nanoTime(); 
 			double value = -1.0; 
 			switch (measure) {